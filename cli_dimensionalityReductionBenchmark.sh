@@ -0,0 +1,3 @@
+#!/bin/bash
+java -jar target/phantomanonymization-1.0-SNAPSHOT.jar --riskAssessmentSeries --seriesConfig example_configs/seriesConfig/riskAssessmentSeries_dimensionalityReduction.yml
+$SHELL
\ No newline at end of file
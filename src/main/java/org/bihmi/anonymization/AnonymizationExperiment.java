@@ -17,25 +17,56 @@ package org.bihmi.anonymization;
 import lombok.extern.slf4j.Slf4j;
 
 import org.bihmi.anonymization.anon.AnonymizationMethods;
+import org.bihmi.anonymization.anon.AnonymizationOutput;
 import org.bihmi.anonymization.config.AnonymizationConfig;
 import org.bihmi.anonymization.config.DataConfig;
 import org.bihmi.anonymization.data.DataLoader;
 import org.deidentifier.arx.Data;
-import org.deidentifier.arx.DataHandle;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 @Slf4j
 public class AnonymizationExperiment {
 
-  public static DataHandle anonymize(AnonymizationConfig anonymizationConfig, DataConfig dataConfig) throws IOException {
+  public static AnonymizationOutput anonymize(AnonymizationConfig anonymizationConfig, DataConfig dataConfig) throws IOException {
+      return anonymize(anonymizationConfig, dataConfig, DataLoader.getData(dataConfig));
+  }
+
+  /**
+   * Anonymizes data which has already been loaded and configured according to the data config.
+   * @param anonymizationConfig
+   * @param dataConfig
+   * @param data data which must not have been anonymized before
+   * @return
+   */
+  public static AnonymizationOutput anonymize(AnonymizationConfig anonymizationConfig, DataConfig dataConfig, Data data) {
       log.info("Anonymizing " + dataConfig.getDataSetName() + " with " + anonymizationConfig.getName());
       long startTime = System.currentTimeMillis();
-      Data data = DataLoader.getData(dataConfig);
       AnonymizationMethods.AnonymizationMethod anonymizationMethod = AnonymizationMethods.CONFIG_ANONYMIZATION(anonymizationConfig);
-      DataHandle output = anonymizationMethod.anonymize(data);
+      AnonymizationOutput output = anonymizationMethod.anonymizeWithDetails(data);
       long endTime = System.currentTimeMillis();
       log.info("Anonymization done in " + (endTime-startTime) + "ms");
       return output;
   }
+
+  /**
+   * Creates a copy of the data including its definition, which can be anonymized independently of the original.
+   * @param data
+   * @return
+   */
+  public static Data getCopy(Data data) {
+      synchronized (data) {
+          List<String[]> rows = new ArrayList<>(data.getHandle().getNumRows() + 1); // + 1 for header
+          Iterator<String[]> iterator = data.getHandle().iterator();
+          while (iterator.hasNext()) {
+              rows.add(iterator.next());
+          }
+          Data result = Data.create(rows);
+          result.getDefinition().read(data.getDefinition());
+          return result;
+      }
+  }
 }
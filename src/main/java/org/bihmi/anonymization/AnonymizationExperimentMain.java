@@ -17,6 +17,7 @@ package org.bihmi.anonymization;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.bihmi.anonymization.anon.AnonymizationOutput;
 import org.bihmi.anonymization.anon.AnonymizationResults;
 import org.bihmi.anonymization.config.AnonymizationConfig;
 import org.bihmi.anonymization.config.ConfigReader;
@@ -24,11 +25,19 @@ import org.bihmi.anonymization.config.DataConfig;
 import org.bihmi.anonymization.config.ReportConfig;
 import org.bihmi.anonymization.config.experiment.AnonymizationExperimentConfig;
 import org.bihmi.anonymization.config.experiment.CombinationRunConfig;
+import org.bihmi.anonymization.data.DataLoader;
 import org.bihmi.anonymization.report.Report;
-import org.deidentifier.arx.DataHandle;
+import org.deidentifier.arx.Data;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Slf4j
 public class AnonymizationExperimentMain {
@@ -58,41 +67,106 @@ public class AnonymizationExperimentMain {
         ReportConfig reportConfig = configReader.readReportConfig(reportConfigPath);
         report = new Report(reportConfig);
 
-        // Start all combinations one after another
+        // Start all combinations
         if (experimentConfig.getCombinationRunConfigs() != null) {
-            runCombinationConfigExperiments(experimentConfig.getCombinationRunConfigs());
+            runCombinationConfigExperiments(experimentConfig.getCombinationRunConfigs(), experimentConfig.getThreadCount(), reportConfig.getMetrics());
         }
 
         report.closeReport();
     }
 
     /**
-     * Runs each experiment in configs separately.
+     * Runs each experiment in configs. Each dataset is loaded once, anonymizations are performed in parallel and
+     * results are written to the report in the order of the configs.
      * @param configs combinationRunConfigs
+     * @param threadCount number of anonymizations performed in parallel
+     * @param metrics names of the metrics to compute, all metrics if null
      * @throws IOException
      */
-    protected static void runCombinationConfigExperiments(List<CombinationRunConfig> configs) throws IOException {
-        for (CombinationRunConfig combinationRunConfig : configs) {
-            for (String pathToDataConfig : combinationRunConfig.getPathsToDataConfig()) {
-                for (String pathToAnonymizationConfig : combinationRunConfig.getPathsToAnonymizationConfig()) {
-                    runExperiment(pathToAnonymizationConfig, pathToDataConfig);
+    protected static void runCombinationConfigExperiments(List<CombinationRunConfig> configs, int threadCount, List<String> metrics) throws IOException {
+
+        // Prepare
+        ConfigReader configReader = new ConfigReader();
+        Map<String, DataConfig> dataConfigs = new HashMap<>();
+        Map<String, Data> datasets = new HashMap<>();
+        List<Experiment> experiments = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+
+        try {
+            // Submit all experiments
+            for (CombinationRunConfig combinationRunConfig : configs) {
+                for (String pathToDataConfig : combinationRunConfig.getPathsToDataConfig()) {
+
+                    // Load each dataset only once
+                    if (!datasets.containsKey(pathToDataConfig)) {
+                        DataConfig config = configReader.readDataConfig(pathToDataConfig);
+                        dataConfigs.put(pathToDataConfig, config);
+                        datasets.put(pathToDataConfig, DataLoader.getData(config));
+                    }
+                    DataConfig dataConfig = dataConfigs.get(pathToDataConfig);
+                    Data dataset = datasets.get(pathToDataConfig);
+
+                    for (String pathToAnonymizationConfig : combinationRunConfig.getPathsToAnonymizationConfig()) {
+                        AnonymizationConfig anonymizationConfig = configReader.readAnonymizationConfig(pathToAnonymizationConfig);
+                        Future<AnonymizationResults> results = executor.submit(() -> {
+                            AnonymizationOutput output = AnonymizationExperiment.anonymize(anonymizationConfig, dataConfig, AnonymizationExperiment.getCopy(dataset));
+                            AnonymizationResults result = new AnonymizationResults(output, metrics);
+                            output.getHandle().release();
+                            return result;
+                        });
+                        experiments.add(new Experiment(anonymizationConfig, dataConfig, results));
+                    }
                 }
             }
+
+            // Write results in order of submission
+            for (Experiment experiment : experiments) {
+                report.writeExperimentToReport(experiment.getResults(), experiment.anonymizationConfig, experiment.dataConfig);
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /**
-     * Starts a single anonymization experiment.
-     * @param pathToAnonymizationConfig
-     * @param pathToDataConfig
-     * @throws IOException
+     * An experiment submitted for execution
      */
-    private static void runExperiment(String pathToAnonymizationConfig, String pathToDataConfig) throws IOException {
-        ConfigReader configReader = new ConfigReader();
-        DataConfig dataConfig = configReader.readDataConfig(pathToDataConfig);
-        AnonymizationConfig anonymizationConfig = configReader.readAnonymizationConfig(pathToAnonymizationConfig);
-        DataHandle output = AnonymizationExperiment.anonymize(anonymizationConfig, dataConfig);
-        AnonymizationResults results = new AnonymizationResults(output);
-        report.writeExperimentToReport(results, anonymizationConfig, dataConfig);
+    private static class Experiment {
+
+        /** Anonymization config */
+        private final AnonymizationConfig anonymizationConfig;
+
+        /** Data config */
+        private final DataConfig dataConfig;
+
+        /** Results of the experiment */
+        private final Future<AnonymizationResults> results;
+
+        /**
+         * Creates a new instance
+         * @param anonymizationConfig
+         * @param dataConfig
+         * @param results
+         */
+        Experiment(AnonymizationConfig anonymizationConfig, DataConfig dataConfig, Future<AnonymizationResults> results) {
+            this.anonymizationConfig = anonymizationConfig;
+            this.dataConfig = dataConfig;
+            this.results = results;
+        }
+
+        /**
+         * Waits for the experiment to finish
+         * @return
+         */
+        AnonymizationResults getResults() {
+            try {
+                return results.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for experiment", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Experiment with " + anonymizationConfig.getName() + " failed", e.getCause());
+            }
+        }
     }
 }
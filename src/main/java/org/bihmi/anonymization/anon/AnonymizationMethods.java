@@ -14,6 +14,7 @@
 
 package org.bihmi.anonymization.anon;
 
+import lombok.extern.slf4j.Slf4j;
 import org.bihmi.anonymization.anon.models.PrivacyModel;
 import org.bihmi.anonymization.config.AnonymizationConfig;
 import org.bihmi.anonymization.config.QualityModelConfig;
@@ -24,6 +25,11 @@ import org.deidentifier.arx.metric.Metric;
 import org.deidentifier.arx.metric.Metric.AggregateFunction;
 
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Contains anonymization methods.
@@ -31,8 +37,16 @@ import java.io.IOException;
  * @author Fabian Prasser
  * @author Thierry Meurers
  */
+@Slf4j
 public class AnonymizationMethods {
 
+    /** Watchdog observing the time budgets of running anonymizations */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "anonymization-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Interface for anonymization methods
      *
@@ -40,7 +54,21 @@ public class AnonymizationMethods {
      */
     public interface AnonymizationMethod {
 
-        DataHandle anonymize(Data handle);
+        /**
+         * Anonymizes the data and reports details about the anonymization process
+         * @param data raw data that should be anonymized.
+         * @return anonymized data and details
+         */
+        AnonymizationOutput anonymizeWithDetails(Data data);
+
+        /**
+         * Anonymizes the data
+         * @param data raw data that should be anonymized.
+         * @return data handle for the anonymized dataset.
+         */
+        default DataHandle anonymize(Data data) {
+            return anonymizeWithDetails(data).getHandle();
+        }
     }
 
     /***
@@ -53,10 +81,10 @@ public class AnonymizationMethods {
              * Weak anonymization with default suppression limit of 1d and k-anonymity with k=1.
              *
              * @param data raw data that should be anonymized.
-             * @return data handle for the anonymized dataset.
+             * @return anonymized data and details
              */
             @Override
-            public DataHandle anonymize(Data data) {
+            public AnonymizationOutput anonymizeWithDetails(Data data) {
 
                 // Prepare
                 ARXConfiguration config = ARXConfiguration.create();
@@ -77,27 +105,60 @@ public class AnonymizationMethods {
                 if (anonymizationConfig.getHeuristicSearchTimeLimit() != null) {
                     config.setHeuristicSearchTimeLimit(anonymizationConfig.getHeuristicSearchTimeLimit());
                 }
+                Integer timeBudget = anonymizationConfig.getTimeBudget();
+                if (timeBudget != null && timeBudget < config.getHeuristicSearchTimeLimit()) {
+                    config.setHeuristicSearchTimeLimit(timeBudget);
+                }
                 setQualityModel(config, anonymizationConfig);
 
+                // Start watchdog. The budget is soft, it cannot interrupt the search but stops local generalization.
+                long start = System.currentTimeMillis();
+                AtomicBoolean expired = new AtomicBoolean(false);
+                ScheduledFuture<?> watchdog = null;
+                if (timeBudget != null) {
+                    watchdog = WATCHDOG.schedule(() -> {
+                        expired.set(true);
+                        log.warn("Anonymization with " + anonymizationConfig.getName() + " exceeded time budget of " + timeBudget + "ms");
+                    }, timeBudget, TimeUnit.MILLISECONDS);
+                }
+
                 // Anonymize
                 ARXAnonymizer anonymizer = new ARXAnonymizer();
                 try {
                     ARXResult result = anonymizer.anonymize(data, config);
                     DataHandle output = result.getOutput();
+                    int iterations = 0;
                     if (anonymizationConfig.isLocalGeneralization() && result.isResultAvailable()) {
                         try {
                             // Define relative number of records to be generalized in each iteration
                             double oMin = 1d/ (double) anonymizationConfig.getLocalGeneralizationIterations();
-                            result.optimizeIterativeFast(output, oMin);
+                            if (anonymizationConfig.isLocalGeneralizationAdaptive()) {
+                                long timeLimit = anonymizationConfig.getLocalGeneralizationTimeLimit() != null ? anonymizationConfig.getLocalGeneralizationTimeLimit() : Long.MAX_VALUE;
+                                iterations = optimizeIteratively(result, output, oMin, anonymizationConfig.getLocalGeneralizationIterations(),
+                                                                 anonymizationConfig.getLocalGeneralizationMinGain(), timeLimit, expired);
+                            } else if (timeBudget != null) {
+                                // Same as optimizeIterativeFast, but allows to stop when the budget is exhausted
+                                iterations = optimizeIteratively(result, output, oMin, anonymizationConfig.getLocalGeneralizationIterations(),
+                                                                 0d, Long.MAX_VALUE, expired);
+                            } else {
+                                result.optimizeIterativeFast(output, oMin);
+                                iterations = -1;
+                            }
                         } catch (RollbackRequiredException e) {
                             e.printStackTrace();
                             throw new RuntimeException(e);
                         }
                     }
                     
-                    return output;
+                    // Done
+                    long duration = System.currentTimeMillis() - start;
+                    return new AnonymizationOutput(output, iterations, duration, timeBudget != null && duration > timeBudget);
                 } catch (IOException e) {
                     throw new IllegalStateException(e);
+                } finally {
+                    if (watchdog != null) {
+                        watchdog.cancel(false);
+                    }
                 }
             }
 
@@ -112,6 +173,76 @@ public class AnonymizationMethods {
 
     }
 
+    /**
+     * Performs local generalization iteration by iteration. Each iteration recodes suppressed records, the gain of an
+     * iteration is the fraction of records it recoded. Suppressed records are counted once, afterwards the count is
+     * updated with the number of records recoded by each iteration. Stops when no further records
+     * can be optimized, the gain drops below the threshold, the time limit is exceeded, the time budget of the
+     * anonymization has expired, or the maximal number of iterations has been performed.
+     *
+     * @param result result of the anonymization
+     * @param output output to optimize
+     * @param oMin relative number of records to be generalized in each iteration
+     * @param maxIterations maximal number of iterations
+     * @param minGain minimal fraction of records to be recoded by an iteration to continue
+     * @param timeLimit time limit in milliseconds
+     * @param expired set by the watchdog when the time budget has expired
+     * @return number of iterations performed
+     * @throws RollbackRequiredException
+     */
+    private static int optimizeIteratively(ARXResult result,
+                                           DataHandle output,
+                                           double oMin,
+                                           int maxIterations,
+                                           double minGain,
+                                           long timeLimit,
+                                           AtomicBoolean expired) throws RollbackRequiredException {
+
+        // Prepare
+        long start = System.currentTimeMillis();
+        int suppressed = getNumSuppressedRecords(output);
+        int iterations = 0;
+
+        // Optimize until converged
+        while (iterations < maxIterations && suppressed > 0 && !expired.get() && result.isOptimizable(output)) {
+
+            // Perform iteration
+            int optimized = result.optimizeFast(output, oMin);
+            iterations++;
+
+            // Track records changed
+            double gain = (double) optimized / (double) output.getNumRows();
+            suppressed -= optimized;
+            log.debug("Local generalization iteration " + iterations + " recoded " + gain + " of records");
+
+            // Check
+            if (gain <= 0d || gain < minGain) {
+                break;
+            }
+            if (System.currentTimeMillis() - start >= timeLimit) {
+                break;
+            }
+        }
+
+        // Done
+        return iterations;
+    }
+
+    /**
+     * Returns the number of suppressed records
+     * @param handle
+     * @return
+     */
+    private static int getNumSuppressedRecords(DataHandle handle) {
+        int count = 0;
+        for (int row = 0; row < handle.getNumRows(); row++) {
+            if (handle.isSuppressed(row)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     private static void setQualityModel(ARXConfiguration config, AnonymizationConfig anonymizationConfig) {
         QualityModelConfig qualityModel = anonymizationConfig.getQualityModel();
         if (qualityModel != null) {
@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.anonymization.anon;
+
+import lombok.Getter;
+import org.deidentifier.arx.DataHandle;
+
+/**
+ * Output of an anonymization together with details about the anonymization process.
+ */
+@Getter
+public class AnonymizationOutput {
+
+    /** Anonymized data */
+    private final DataHandle handle;
+
+    /** Number of local generalization iterations performed, 0 if not used and -1 if not tracked */
+    private final int localGeneralizationIterations;
+
+    /** Wall-clock duration of the anonymization in milliseconds */
+    private final long duration;
+
+    /** True if the anonymization exceeded its time budget */
+    private final boolean overBudget;
+
+    /**
+     * Creates a new instance for an output which has not been produced by an anonymization, e.g. loaded from disk
+     * @param handle anonymized data
+     * @param localGeneralizationIterations number of local generalization iterations performed
+     */
+    public AnonymizationOutput(DataHandle handle, int localGeneralizationIterations) {
+        this(handle, localGeneralizationIterations, 0L, false);
+    }
+
+    /**
+     * Creates a new instance
+     * @param handle anonymized data
+     * @param localGeneralizationIterations number of local generalization iterations performed
+     * @param duration wall-clock duration in milliseconds
+     * @param overBudget true if the time budget was exceeded
+     */
+    public AnonymizationOutput(DataHandle handle, int localGeneralizationIterations, long duration, boolean overBudget) {
+        this.handle = handle;
+        this.localGeneralizationIterations = localGeneralizationIterations;
+        this.duration = duration;
+        this.overBudget = overBudget;
+    }
+}
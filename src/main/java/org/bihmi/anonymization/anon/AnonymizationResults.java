@@ -35,80 +35,32 @@ public class AnonymizationResults {
     // Set<String> attributes;
 
     public AnonymizationResults(DataHandle handle){
-        this.datasetPrivacyMetrics = fillDatasetPrivacyMetrics(handle);
-        this.attributePrivacyMetrics = fillAttributePrivacyMetrics(handle);
+        this(handle, null);
     }
 
     /**
-     * Retrieves attribute statistics from handle and saves them.
+     * Computes the given metrics
      * @param handle anonymized data
+     * @param metrics names of the metrics to compute, all metrics if null
      */
-    private HashMap<String, HashMap<String, Double>> fillAttributePrivacyMetrics(DataHandle handle) {
-        attributePrivacyMetrics = new HashMap<>();
-
-        Set<String> qids = handle.getDefinition().getQuasiIdentifyingAttributes();
-        for (String qid : qids) {
-            HashMap<String, Double> singleAttributePrivacyMetrics = new HashMap<>();
-
-            singleAttributePrivacyMetrics.put("Granularity",
-                    handle.getStatistics().getQualityStatistics().getGranularity().getValue(qid));
-            singleAttributePrivacyMetrics.put("NonUniformEntropy",
-                    handle.getStatistics().getQualityStatistics().getNonUniformEntropy().getValue(qid));
+    public AnonymizationResults(DataHandle handle, Collection<String> metrics){
+        MetricsEngine engine = new MetricsEngine(handle, metrics);
+        this.datasetPrivacyMetrics = engine.getDatasetMetrics();
+        this.attributePrivacyMetrics = engine.getAttributeMetrics();
+    }
 
-            attributePrivacyMetrics.put(qid, singleAttributePrivacyMetrics);
-        }
-        return attributePrivacyMetrics;
+    public AnonymizationResults(AnonymizationOutput output){
+        this(output, null);
     }
 
     /**
-     * Retrieves dataset statistics from handle and saves them.
-     * @param handle anonymized data
+     * Computes the given metrics
+     * @param output output of the anonymization
+     * @param metrics names of the metrics to compute, all metrics if null
      */
-    private HashMap<String, Double> fillDatasetPrivacyMetrics(DataHandle handle) {
-        datasetPrivacyMetrics = new HashMap<>();
-
-        datasetPrivacyMetrics.put("JournalistRisk",
-                handle.getRiskEstimator().getSampleBasedReidentificationRisk().getEstimatedJournalistRisk());
-
-        datasetPrivacyMetrics.put("MinimumRisk",
-                handle.getRiskEstimator().getSampleBasedReidentificationRisk().getLowestRisk());
-
-        datasetPrivacyMetrics.put("RecordsAffectedByLowestRisk",
-                handle.getRiskEstimator().getSampleBasedReidentificationRisk().getNumRecordsAffectedByLowestRisk());
-
-        datasetPrivacyMetrics.put("HighestRisk",
-                handle.getRiskEstimator().getSampleBasedReidentificationRisk().getHighestRisk());
-
-        datasetPrivacyMetrics.put("RecordsAffectedByHighestRisk",
-                handle.getRiskEstimator().getSampleBasedReidentificationRisk().getNumRecordsAffectedByHighestRisk());
-
-        datasetPrivacyMetrics.put("AverageRisk",
-                handle.getRiskEstimator().getSampleBasedReidentificationRisk().getAverageRisk());
-
-        datasetPrivacyMetrics.put("MarketerRisk",
-                handle.getRiskEstimator().getSampleBasedReidentificationRisk().getEstimatedMarketerRisk());
-
-        datasetPrivacyMetrics.put("MaxClassSize",
-                (double) handle.getStatistics().getEquivalenceClassStatistics().getMaximalEquivalenceClassSize());
-
-        datasetPrivacyMetrics.put("AverageClassSize",
-                handle.getStatistics().getEquivalenceClassStatistics().getAverageEquivalenceClassSize());
-
-        datasetPrivacyMetrics.put("MinClassSize",
-                (double) handle.getStatistics().getEquivalenceClassStatistics().getMinimalEquivalenceClassSize());
-
-        datasetPrivacyMetrics.put("SuppressedRecords",
-                (double) handle.getStatistics().getEquivalenceClassStatistics().getNumberOfSuppressedRecords());
-
-        datasetPrivacyMetrics.put("Granularity",
-                handle.getStatistics().getQualityStatistics().getGranularity().getArithmeticMean());
-
-        datasetPrivacyMetrics.put("Discernibility",
-                handle.getStatistics().getQualityStatistics().getDiscernibility().getValue());
-
-        datasetPrivacyMetrics.put("Entropy",
-                handle.getStatistics().getQualityStatistics().getNonUniformEntropy().getArithmeticMean());
-        return datasetPrivacyMetrics;
+    public AnonymizationResults(AnonymizationOutput output, Collection<String> metrics){
+        this(output.getHandle(), metrics);
+        this.datasetPrivacyMetrics.put("LocalGeneralizationIterations", (double) output.getLocalGeneralizationIterations());
     }
 
     public List<String> getDatasetPrivacyHeader(){
@@ -0,0 +1,211 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.anonymization.anon;
+
+import org.deidentifier.arx.DataHandle;
+import org.deidentifier.arx.aggregates.StatisticsEquivalenceClasses;
+import org.deidentifier.arx.aggregates.StatisticsQuality;
+import org.deidentifier.arx.risk.RiskModelSampleRisks;
+
+import java.util.*;
+
+/**
+ * Computes privacy and utility metrics of an anonymized dataset with ARX. The sample-based re-identification risks,
+ * the equivalence class statistics and the quality statistics are each computed at most once and shared by all
+ * metrics derived from them. Only metrics which have been requested are computed.
+ */
+public class MetricsEngine {
+
+    /** Dataset metric */
+    public static final String JOURNALIST_RISK                   = "JournalistRisk";
+    /** Dataset metric */
+    public static final String MINIMUM_RISK                      = "MinimumRisk";
+    /** Dataset metric */
+    public static final String RECORDS_AFFECTED_BY_LOWEST_RISK   = "RecordsAffectedByLowestRisk";
+    /** Dataset metric */
+    public static final String HIGHEST_RISK                      = "HighestRisk";
+    /** Dataset metric */
+    public static final String RECORDS_AFFECTED_BY_HIGHEST_RISK  = "RecordsAffectedByHighestRisk";
+    /** Dataset metric */
+    public static final String AVERAGE_RISK                      = "AverageRisk";
+    /** Dataset metric */
+    public static final String MARKETER_RISK                     = "MarketerRisk";
+    /** Dataset metric */
+    public static final String MAX_CLASS_SIZE                    = "MaxClassSize";
+    /** Dataset metric */
+    public static final String AVERAGE_CLASS_SIZE                = "AverageClassSize";
+    /** Dataset metric */
+    public static final String MIN_CLASS_SIZE                    = "MinClassSize";
+    /** Dataset metric */
+    public static final String SUPPRESSED_RECORDS                = "SuppressedRecords";
+    /** Dataset and attribute metric */
+    public static final String GRANULARITY                       = "Granularity";
+    /** Dataset metric */
+    public static final String DISCERNIBILITY                    = "Discernibility";
+    /** Dataset metric */
+    public static final String ENTROPY                           = "Entropy";
+    /** Attribute metric */
+    public static final String NON_UNIFORM_ENTROPY               = "NonUniformEntropy";
+
+    /** All dataset metrics */
+    public static final List<String> DATASET_METRICS = Collections.unmodifiableList(Arrays.asList(
+            JOURNALIST_RISK, MINIMUM_RISK, RECORDS_AFFECTED_BY_LOWEST_RISK, HIGHEST_RISK, RECORDS_AFFECTED_BY_HIGHEST_RISK,
+            AVERAGE_RISK, MARKETER_RISK, MAX_CLASS_SIZE, AVERAGE_CLASS_SIZE, MIN_CLASS_SIZE, SUPPRESSED_RECORDS,
+            GRANULARITY, DISCERNIBILITY, ENTROPY));
+
+    /** All attribute metrics */
+    public static final List<String> ATTRIBUTE_METRICS = Collections.unmodifiableList(Arrays.asList(
+            GRANULARITY, NON_UNIFORM_ENTROPY));
+
+    /** Handle */
+    private final DataHandle              handle;
+
+    /** Requested metrics */
+    private final Set<String>             metrics;
+
+    /** Re-identification risks, null if not yet computed */
+    private RiskModelSampleRisks          risks;
+
+    /** Equivalence class statistics, null if not yet computed */
+    private StatisticsEquivalenceClasses  classes;
+
+    /** Quality statistics, null if not yet computed */
+    private StatisticsQuality             quality;
+
+    /**
+     * Creates a new instance
+     * @param handle anonymized data
+     * @param metrics names of metrics to compute, all metrics if null
+     */
+    public MetricsEngine(DataHandle handle, Collection<String> metrics) {
+        this.handle = handle;
+        this.metrics = metrics == null ? null : new HashSet<>(metrics);
+    }
+
+    /**
+     * Returns the requested dataset metrics
+     * @return
+     */
+    public HashMap<String, Double> getDatasetMetrics() {
+        HashMap<String, Double> result = new HashMap<>();
+        for (String metric : DATASET_METRICS) {
+            if (isRequested(metric)) {
+                result.put(metric, getDatasetMetric(metric));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the requested metrics for each quasi-identifier
+     * @return
+     */
+    public HashMap<String, HashMap<String, Double>> getAttributeMetrics() {
+        HashMap<String, HashMap<String, Double>> result = new HashMap<>();
+        for (String qid : handle.getDefinition().getQuasiIdentifyingAttributes()) {
+            HashMap<String, Double> attributeMetrics = new HashMap<>();
+            if (isRequested(GRANULARITY)) {
+                attributeMetrics.put(GRANULARITY, getQuality().getGranularity().getValue(qid));
+            }
+            if (isRequested(NON_UNIFORM_ENTROPY)) {
+                attributeMetrics.put(NON_UNIFORM_ENTROPY, getQuality().getNonUniformEntropy().getValue(qid));
+            }
+            result.put(qid, attributeMetrics);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a single dataset metric
+     * @param metric
+     * @return
+     */
+    private double getDatasetMetric(String metric) {
+        switch (metric) {
+        case JOURNALIST_RISK:
+            return getRisks().getEstimatedJournalistRisk();
+        case MINIMUM_RISK:
+            return getRisks().getLowestRisk();
+        case RECORDS_AFFECTED_BY_LOWEST_RISK:
+            return getRisks().getNumRecordsAffectedByLowestRisk();
+        case HIGHEST_RISK:
+            return getRisks().getHighestRisk();
+        case RECORDS_AFFECTED_BY_HIGHEST_RISK:
+            return getRisks().getNumRecordsAffectedByHighestRisk();
+        case AVERAGE_RISK:
+            return getRisks().getAverageRisk();
+        case MARKETER_RISK:
+            return getRisks().getEstimatedMarketerRisk();
+        case MAX_CLASS_SIZE:
+            return getClasses().getMaximalEquivalenceClassSize();
+        case AVERAGE_CLASS_SIZE:
+            return getClasses().getAverageEquivalenceClassSize();
+        case MIN_CLASS_SIZE:
+            return getClasses().getMinimalEquivalenceClassSize();
+        case SUPPRESSED_RECORDS:
+            return getClasses().getNumberOfSuppressedRecords();
+        case GRANULARITY:
+            return getQuality().getGranularity().getArithmeticMean();
+        case DISCERNIBILITY:
+            return getQuality().getDiscernibility().getValue();
+        case ENTROPY:
+            return getQuality().getNonUniformEntropy().getArithmeticMean();
+        default:
+            throw new IllegalArgumentException("Unknown metric: " + metric);
+        }
+    }
+
+    /**
+     * Returns the equivalence class statistics, which are computed once on first access
+     * @return
+     */
+    private StatisticsEquivalenceClasses getClasses() {
+        if (classes == null) {
+            classes = handle.getStatistics().getEquivalenceClassStatistics();
+        }
+        return classes;
+    }
+
+    /**
+     * Returns the quality statistics, which are computed once on first access
+     * @return
+     */
+    private StatisticsQuality getQuality() {
+        if (quality == null) {
+            quality = handle.getStatistics().getQualityStatistics();
+        }
+        return quality;
+    }
+
+    /**
+     * Returns the sample-based re-identification risks, which are computed once on first access
+     * @return
+     */
+    private RiskModelSampleRisks getRisks() {
+        if (risks == null) {
+            risks = handle.getRiskEstimator().getSampleBasedReidentificationRisk();
+        }
+        return risks;
+    }
+
+    /**
+     * Returns whether the metric has been requested
+     * @param metric
+     * @return
+     */
+    private boolean isRequested(String metric) {
+        return metrics == null || metrics.contains(metric);
+    }
+}
@@ -60,6 +60,40 @@ public class AnonymizationConfig {
     
     /** Iteration performed for local generalization */
     private int localGeneralizationIterations = 100;
+
+    /** True if local generalization stops early when iterations no longer recode enough records */
+    private boolean localGeneralizationAdaptive = false;
+
+    /** Minimal fraction of records that must be recoded by an iteration of adaptive local generalization to continue */
+    private double localGeneralizationMinGain = 0.001d;
+
+    /** Time limit in milliseconds for adaptive local generalization */
+    private Integer localGeneralizationTimeLimit = Integer.MAX_VALUE;
+
+    /**
+     * Soft wall-clock budget in milliseconds for a single anonymization, unlimited if null. The search is only
+     * bounded by heuristic algorithms honouring the heuristic search time limit, local generalization is stopped
+     * between iterations. Anonymizations may therefore take longer, which is reported as exceeding the budget.
+     */
+    private Integer timeBudget;
+
+    /** Policy applied to anonymizations exceeding the time budget */
+    private OverBudgetPolicy overBudgetPolicy = OverBudgetPolicy.ACCEPT;
+
+    /** Maximal number of retries with a different sample if the policy is RETRY */
+    private int overBudgetRetries = 3;
+
+    /**
+     * Policies for anonymizations exceeding the time budget
+     */
+    public enum OverBudgetPolicy {
+        /** Accept the best output found within the budget */
+        ACCEPT,
+        /** Retry with a different sample, accept the output if retries are exhausted */
+        RETRY,
+        /** Mark the sample as failed and exclude it from the assessment */
+        FAIL
+    }
     
     
 }
\ No newline at end of file
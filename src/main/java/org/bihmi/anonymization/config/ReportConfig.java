@@ -18,6 +18,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.List;
+
 /**
  * Config class to configure an anonymization report
  */
@@ -29,4 +31,7 @@ public class ReportConfig {
     // path to which the report will be saved
     private String filePathToReport = "results";
 
+    // names of the metrics to compute (see MetricsEngine), all metrics if not specified
+    private List<String> metrics;
+
 }
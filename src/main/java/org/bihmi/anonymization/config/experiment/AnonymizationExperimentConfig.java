@@ -34,4 +34,7 @@ public class AnonymizationExperimentConfig {
 
     /** List of CombinationRunConfig configs */
     private List<CombinationRunConfig> combinationRunConfigs;
+
+    /** Number of anonymizations performed in parallel */
+    private int threadCount = 1;
 }
@@ -57,7 +57,7 @@ public class Report {
      * Handles the closing of the reportWriter
      * @throws IOException
      */
-    public void closeReport() throws IOException {
+    public synchronized void closeReport() throws IOException {
         if (this.reportWriter != null){
             this.reportWriter.closeReport();
         }
@@ -70,7 +70,7 @@ public class Report {
      * @param results object containing the anonymization metrics
      * @throws IOException
      */
-    public void checkAndInitReport(String reportFolder, AnonymizationResults results) throws IOException {
+    public synchronized void checkAndInitReport(String reportFolder, AnonymizationResults results) throws IOException {
         if (reportWriter == null){
             // TODO: Maybe extract to separate method
             List<String> headerStart = new ArrayList<>();
@@ -100,7 +100,7 @@ public class Report {
      * @param dataConfig
      * @throws IOException
      */
-    public void writeExperimentToReport(AnonymizationResults results, AnonymizationConfig anonymizationConfig, DataConfig dataConfig) throws IOException {
+    public synchronized void writeExperimentToReport(AnonymizationResults results, AnonymizationConfig anonymizationConfig, DataConfig dataConfig) throws IOException {
 
         String anonymizationName = anonymizationConfig.getName();
         String datasetName = dataConfig.getDataSetName();
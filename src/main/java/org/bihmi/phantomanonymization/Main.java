@@ -14,12 +14,20 @@
 
 package org.bihmi.phantomanonymization;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URISyntaxException;
 import java.text.ParseException;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -35,8 +43,10 @@ import org.bihmi.phantomanonymization.config.ConfigReader;
 import org.bihmi.phantomanonymization.config.RiskAssessmentConfig;
 import org.bihmi.phantomanonymization.config.SeriesConfig;
 import org.bihmi.phantomanonymization.config.StatisticsConfig;
+import org.bihmi.phantomanonymization.phantom.ModelCache;
 import org.bihmi.phantomanonymization.phantom.PhantomAnonymization;
 import org.bihmi.phantomanonymization.target.TargetSelection;
+import org.bihmi.phantomanonymization.target.TargetType;
 import org.deidentifier.arx.Data;
 
 import lombok.extern.slf4j.Slf4j;
@@ -47,6 +57,21 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class Main {
     
+    /** Cache of classifiers shared by all risk assessments, created by the first assessment which enables it */
+    private static ModelCache modelCache;
+    
+    /**
+     * Returns the cache of classifiers, which is created with the given capacity if it doesn't exist yet
+     * @param capacity
+     * @return
+     */
+    private static synchronized ModelCache getModelCache(int capacity) {
+        if (modelCache == null) {
+            modelCache = new ModelCache(capacity);
+        }
+        return modelCache;
+    }
+    
     /** Mode*/
     private static final Option MODE_RISK_ASSESSMENT = Option.builder().longOpt("riskAssessment")
             .desc("Risk assessment mode. If chosen, the following options must be present as well: riskAssessmentConfig, dataConfig, anonymizationConfig, name")
@@ -180,20 +205,68 @@ public class Main {
             SeriesConfig seriesConfig = configReader.readExperimentConfig(experimentConfigPath);
             log.info("Running risk assessment series: '" + seriesConfig.getName() + "' (" + experimentConfigPath + ")");
             int numberOfAssessments = calculateSeriesLength(seriesConfig);
-            int currentAssessment = 1;
+            AtomicInteger currentAssessment = new AtomicInteger(1);
             
-            // Start all combinations one after another
+            // Collect all combinations
+            List<Callable<Void>> assessments = new ArrayList<>();
             if (seriesConfig.getCombinationConfig() != null) {
                 for (CombinationConfig combinationRunConfig : seriesConfig.getCombinationConfig()) {
                     for (String pathToPipelineConfig : combinationRunConfig.getPathsToRiskAssessmentConfig()) {
                         for (String pathToDataConfig : combinationRunConfig.getPathsToDataConfig()) {
                             for (String pathToAnonymizationConfig : combinationRunConfig.getPathsToAnonymizationConfig()) {
-                                log.info("Running risk assessment (" + currentAssessment + "/" + numberOfAssessments + "):");
-                                runRiskAssessment(pathToPipelineConfig, pathToDataConfig, pathToAnonymizationConfig, seriesConfig.getName());
-                                currentAssessment++;
+                                assessments.add(() -> {
+                                    log.info("Running risk assessment (" + currentAssessment.getAndIncrement() + "/" + numberOfAssessments + "):");
+                                    runRiskAssessment(pathToPipelineConfig, pathToDataConfig, pathToAnonymizationConfig, seriesConfig.getName());
+                                    return null;
+                                });
+                            }
+                        }
+                    }
+                }
+            }
+            
+            // Start all combinations one after another or in parallel
+            if (seriesConfig.getParallelAssessments() <= 1) {
+                for (Callable<Void> assessment : assessments) {
+                    try {
+                        assessment.call();
+                    } catch (IOException | ParseException | InterruptedException | RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            } else {
+                ExecutorService executor = Executors.newFixedThreadPool(seriesConfig.getParallelAssessments());
+                Throwable failure = null;
+                try {
+                    for (Future<Void> future : executor.invokeAll(assessments)) {
+                        try {
+                            future.get();
+                        } catch (ExecutionException e) {
+                            log.error("Risk assessment failed", e.getCause());
+                            if (failure == null) {
+                                failure = e.getCause();
+                            } else {
+                                failure.addSuppressed(e.getCause());
                             }
                         }
                     }
+                } finally {
+                    executor.shutdown();
+                }
+                
+                // Fail as when running sequentially, after all assessments have completed
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                } else if (failure instanceof ParseException) {
+                    throw (ParseException) failure;
+                } else if (failure instanceof InterruptedException) {
+                    throw (InterruptedException) failure;
+                } else if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                } else if (failure != null) {
+                    throw new IllegalStateException(failure);
                 }
             }
             
@@ -221,13 +294,13 @@ public class Main {
             ConfigReader configReader = new ConfigReader();
             DataConfig dataConfig = configReader.readDataConfig(dataConfigPath);
             Data data = DataLoader.getData(dataConfig);
-            TargetSelection targetSelection = new TargetSelection(data);
-            Set<Integer> outlierTargets = targetSelection.getOutlierTargets(data.getHandle().getNumRows());
+            TargetSelection targetSelection = TargetSelection.getInstance(dataConfig, data);
+            int[] outlierTargets = targetSelection.getRankedTargets(data.getHandle().getNumRows(), TargetType.OUTLIER);
 
-            // Write to file
+            // Write to file, ordered by descending distance
             // TODO: Hard-coded output paths should be avoided
-            PrintStream fileStream = new PrintStream(new File("targets_" + dataConfig.getDataSetName() + ".csv"));
-            for (Integer target : outlierTargets) {
+            PrintStream fileStream = new PrintStream(new BufferedOutputStream(new FileOutputStream("targets_" + dataConfig.getDataSetName() + ".csv")));
+            for (int target : outlierTargets) {
                 fileStream.println(target + "; " + targetSelection.getNormalizedDistance(target) + ";");
             }
             fileStream.flush();
@@ -295,7 +368,15 @@ public class Main {
         
         // Run
         PhantomAnonymization assessment = new PhantomAnonymization(riskAssessmentConfig, dataConfig, anonymizationConfig, statisticsConfig, name);
+        ModelCache cache = null;
+        if (riskAssessmentConfig.getModelCacheSize() > 0) {
+            cache = getModelCache(riskAssessmentConfig.getModelCacheSize());
+            assessment.setModelCache(cache);
+        }
         assessment.runRiskAssessment();
+        if (cache != null) {
+            log.info(" * Model cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        }
         
     }
 }
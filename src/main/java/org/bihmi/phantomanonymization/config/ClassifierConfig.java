@@ -0,0 +1,71 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.config;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import org.bihmi.phantomanonymization.phantom.ClassifierType;
+
+/**
+ * Hyperparameters of the classifiers used to predict membership
+ */
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+public class ClassifierConfig {
+
+    /** Name used to label results of the configuration in classifier grids */
+    private String         name;
+
+    /** Classifier type, null for the classifier type of the risk assessment */
+    private ClassifierType classifierType;
+
+    /** Number of neighbors of KNN, 5 is used by Stadler et al. */
+    private int     knnNeighbors       = 5;
+
+    /** Number of trees of random forests, sklearn default := 100 | ARX default := 500 */
+    private int     rfTrees            = 100;
+
+    /** Maximal number of leaf nodes of trees, sklearn default := +INF | ARX default = 100 */
+    private int     rfMaxNodes         = Integer.MAX_VALUE;
+
+    /** Minimal size of leaf nodes of trees, sklearn default := 1 | ARX default := 5 */
+    private int     rfNodeSize         = 1;
+
+    /** Number of variables considered for splits, 0 for sqrt(#features) as in sklearn */
+    private int     rfMtry             = 0;
+
+    /** Fraction of samples used to train each tree, ARX default := 1d */
+    private double  rfSubsample        = 1d;
+
+    /** Whether to train trees in parallel on threads which are no longer used for jobs */
+    private boolean rfParallelTraining = false;
+
+    /** Learning rate of online logistic regression */
+    private double  onlineLearningRate = 0.1d;
+
+    /**
+     * Returns the name of the configuration or a generic label derived from its position in a grid
+     * @param index position in the grid
+     * @return
+     */
+    public String getLabel(int index) {
+        return name != null ? name : "Classifier" + (index + 1);
+    }
+}
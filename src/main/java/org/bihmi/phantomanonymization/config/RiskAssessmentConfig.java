@@ -19,11 +19,16 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.bihmi.phantomanonymization.features.FeatureType;
 import org.bihmi.phantomanonymization.phantom.AttributesForAttackType;
 import org.bihmi.phantomanonymization.phantom.ClassifierType;
+import org.bihmi.phantomanonymization.phantom.DimensionalityReduction;
+import org.bihmi.phantomanonymization.phantom.SampleParallelism;
+import org.bihmi.phantomanonymization.phantom.UtilityMetric;
 import org.bihmi.phantomanonymization.target.TargetType;
 
 @Getter
@@ -44,15 +49,42 @@ public class RiskAssessmentConfig {
     // TODO: Suggest to only support one feature type, if I'm not missing something
     private List<FeatureType>       featureTypes;
 
+    /** Number of attributes combined by marginals features, 2 or 3 */
+    private int                     marginalsOrder      = 2;
+
+    /** Maximal dimension of marginals features, larger vectors are hashed. 0 if unlimited, at most 2^20. */
+    private int                     marginalsMaxDimension = 65536;
+
+    /** Whether to include marginals in ensemble features */
+    private boolean                 ensembleWithMarginals = false;
+
+    /** Dimensionality reduction applied to feature vectors before training classifiers */
+    private DimensionalityReduction dimensionalityReduction = DimensionalityReduction.NONE;
+
+    /** Dimension of feature vectors after dimensionality reduction, 0 to keep the dimension */
+    private int                     reducedDimension    = 0;
+
     /** Classifier type */
     private ClassifierType          classifierType;
 
+    /** Hyperparameters of classifiers */
+    private ClassifierConfig        classifierConfig    = new ClassifierConfig();
+
+    /** Additional classifier configurations trained and evaluated on the same features */
+    private List<ClassifierConfig>  classifierGrid      = new ArrayList<>();
+
+    /** Maximal number of trained classifiers kept to be reused for identical training data, 0 to disable */
+    private int                     modelCacheSize      = 0;
+
     /** Number of targets */
     private int                     targetCount;
 
     /** Target type */
     private TargetType              targetType;
 
+    /** Number of neighbours considered by outlier target types based on nearest neighbours */
+    private int                     targetNeighbors     = 10;
+
     /** File to import targets from */
     private String                  targetImportFile;
 
@@ -90,6 +122,9 @@ public class RiskAssessmentConfig {
     // TODO: Turn into CLI parameter?
     private int                     threadCount         = 32;
 
+    /** Degree of parallelism used to anonymize the samples within a run, uses threads in addition to threadCount */
+    private SampleParallelism       sampleParallelism   = SampleParallelism.NONE;
+
     /** When true use stored anonymized data at pathToExperiment to run experiments. If no data at path, generate experiment data */
     private Boolean                 useCheckpointData   = false;
 
@@ -98,5 +133,8 @@ public class RiskAssessmentConfig {
     
     /** Paths to statistics config */
     private String                  pathToStatisticsConfig;
+
+    /** Utility metrics computed for test samples and written to the log file */
+    private List<UtilityMetric>     metrics             = new ArrayList<>(Arrays.asList(UtilityMetric.values()));
 }
 
@@ -33,4 +33,7 @@ public class SeriesConfig {
 
     /** List of CombinationConfig configs */
     private List<CombinationConfig> combinationConfig;
+
+    /** Number of assessments executed in parallel */
+    private int parallelAssessments = 1;
 }
@@ -18,4 +18,10 @@ public class StatisticsConfig {
     
     /** Attribute which class will be predicted  */
     String targetAttribute;
+    
+    /** Classification accuracy is computed for every n-th test iteration of a run */
+    int classificationIterationStep = 1;
+    
+    /** Number of low-priority threads used to compute classification accuracies */
+    int classificationThreads = 1;
 }
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.features;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.deidentifier.arx.DataHandle;
+import org.deidentifier.arx.DataType;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads numerical values of a single column of a data handle as doubles. The reader is specialized for the data type
+ * of the column once and caches the parsed value of each distinct label, so that every label is parsed only once.
+ * Instances are not thread-safe.
+ */
+abstract class ColumnReader {
+
+    /**
+     * Reader for data types represented as long
+     */
+    private static class LongReader extends ColumnReader {
+
+        /**
+         * Creates a new instance
+         */
+        LongReader(DataHandle handle, int column) {
+            super(handle, column);
+        }
+
+        @Override
+        double parse(int row, String value) {
+            return handle.getLong(row, column);
+        }
+    }
+
+    /**
+     * Reader for data types represented as double
+     */
+    private static class DecimalReader extends ColumnReader {
+
+        /**
+         * Creates a new instance
+         */
+        DecimalReader(DataHandle handle, int column) {
+            super(handle, column);
+        }
+
+        @Override
+        double parse(int row, String value) {
+            if (value != null && !value.equals("*")) {
+                return Double.valueOf(value);
+            }
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Reader for data types represented as date
+     */
+    private static class DateReader extends ColumnReader {
+
+        /** Data type */
+        private final DataType.ARXDate type;
+
+        /**
+         * Creates a new instance
+         */
+        DateReader(DataHandle handle, int column) {
+            super(handle, column);
+            this.type = (DataType.ARXDate) handle.getDefinition().getDataType(handle.getAttributeName(column));
+        }
+
+        @Override
+        double parse(int row, String value) {
+            try {
+                return DateUtils.parseDate(value, type.getLocale(), type.getFormat()).getTime();
+            } catch (ParseException e) {
+                // TODO Why caused by short heuristic searches?
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Creates a reader for the given column
+     * @param handle
+     * @param column
+     * @param clazz class wrapped by the data type of the column
+     * @return
+     */
+    static ColumnReader create(DataHandle handle, int column, Class<?> clazz) {
+        if (clazz.equals(Long.class)) {
+            return new LongReader(handle, column);
+        } else if (clazz.equals(Double.class)) {
+            return new DecimalReader(handle, column);
+        } else if (clazz.equals(Date.class)) {
+            return new DateReader(handle, column);
+        } else {
+            throw new IllegalStateException("Attribute is not numeric");
+        }
+    }
+
+    /** Handle */
+    final DataHandle                  handle;
+    /** Column */
+    final int                         column;
+    /** Parsed values of labels */
+    private final Map<String, Double> cache = new HashMap<>();
+
+    /**
+     * Creates a new instance
+     * @param handle
+     * @param column
+     */
+    ColumnReader(DataHandle handle, int column) {
+        this.handle = handle;
+        this.column = column;
+    }
+
+    /**
+     * Returns the value of the given row as double
+     * @param row
+     * @return
+     */
+    double read(int row) {
+        String value = handle.getValue(row, column);
+        Double result = cache.get(value);
+        if (result == null) {
+            result = parse(row, value);
+            cache.put(value, result);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the value of the given row
+     * @param row
+     * @param value label of the row
+     * @return
+     */
+    abstract double parse(int row, String value);
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.features;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of encoded columns, which are shared by features
+ */
+class ColumnStatistics {
+
+    /**
+     * Returns the arithmetic mean, median and sample variance of the given values, ignoring NaN values of suppressed
+     * rows. For an even number of values, the median is the mean of the two middle values. All statistics are 0 if
+     * there are no values.
+     * @param numeric
+     * @return
+     */
+    static double[] getMoments(double[] numeric) {
+
+        // Collect values and calculate mean
+        double[] values = new double[numeric.length];
+        int count = 0;
+        double sum = 0d;
+        for (double value : numeric) {
+            if (!Double.isNaN(value)) {
+                values[count++] = value;
+                sum += value;
+            }
+        }
+        if (count == 0) {
+            return new double[] {0d, 0d, 0d};
+        }
+        double mean = sum / count;
+
+        // Calculate sample variance
+        double squares = 0d;
+        for (int i = 0; i < count; i++) {
+            double delta = values[i] - mean;
+            squares += delta * delta;
+        }
+        double var = count > 1 ? squares / (count - 1) : 0d;
+
+        // Calculate median
+        Arrays.sort(values, 0, count);
+        int middle = count / 2;
+        double median = count % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2d;
+
+        // Done
+        return new double[] {mean, median, var};
+    }
+
+    /**
+     * Returns the local code with the lowest count. Ties are resolved in favour of the lower code, i.e. the value
+     * which appeared first.
+     * @param counts
+     * @return
+     */
+    static int getLeastFrequent(int[] counts) {
+        int least = 0;
+        for (int code = 1; code < counts.length; code++) {
+            if (counts[code] < counts[least]) {
+                least = code;
+            }
+        }
+        return least;
+    }
+
+    /**
+     * Returns the local code with the highest count. Ties are resolved in favour of the lower code, i.e. the value
+     * which appeared first.
+     * @param counts
+     * @return
+     */
+    static int getMostFrequent(int[] counts) {
+        int most = 0;
+        for (int code = 1; code < counts.length; code++) {
+            if (counts[code] > counts[most]) {
+                most = code;
+            }
+        }
+        return most;
+    }
+
+    /**
+     * Returns the values of all rows which are not suppressed, in the order of the rows
+     * @param numeric values of all rows
+     * @param rowLive rows which are not suppressed
+     * @param numLiveRows number of rows which are not suppressed
+     * @return
+     */
+    static double[] getLiveValues(double[] numeric, boolean[] rowLive, int numLiveRows) {
+        double[] values = new double[numLiveRows];
+        int pos = 0;
+        for (int row = 0; row < rowLive.length; row++) {
+            if (rowLive[row]) {
+                values[pos++] = numeric[row];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the dictionary codes of all rows which are not suppressed, in the order of the rows
+     * @param codes local codes of all rows
+     * @param mapping dictionary code per local code
+     * @param rowLive rows which are not suppressed
+     * @param numLiveRows number of rows which are not suppressed
+     * @return
+     */
+    static int[] getLiveCodes(int[] codes, int[] mapping, boolean[] rowLive, int numLiveRows) {
+        int[] values = new int[numLiveRows];
+        int pos = 0;
+        for (int row = 0; row < rowLive.length; row++) {
+            if (rowLive[row]) {
+                values[pos++] = mapping[codes[row]];
+            }
+        }
+        return values;
+    }
+}
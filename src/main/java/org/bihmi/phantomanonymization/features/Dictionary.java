@@ -16,17 +16,100 @@ package org.bihmi.phantomanonymization.features;
 
 import org.bihmi.anonymization.config.AttributeConfig;
 import org.deidentifier.arx.Data;
+import org.deidentifier.arx.DataHandle;
 
 import java.util.*;
 
 /**
- * Simple dictionary class
+ * Simple dictionary class. The dictionary is filled with all values which may occur and then frozen. A frozen
+ * dictionary is immutable, can be shared between threads and maps all values which have not been added before
+ * freezing to an additional overflow code, so that the layout of feature vectors is fixed.
  */
 public class Dictionary {
 
-	/** Map for values*/
+    /**
+     * Immutable open-addressing table for the values of one attribute
+     */
+    private static final class Table {
+
+        /** Values, null for empty slots */
+        private final String[] keys;
+        /** Codes of values */
+        private final int[]    codes;
+        /** Mask for slot calculation */
+        private final int      mask;
+        /** Number of values */
+        private final int      size;
+        /** Code of null, overflow code if not contained */
+        private final int      nullCode;
+
+        /**
+         * Creates a new instance
+         * @param values
+         */
+        Table(Map<String, Integer> values) {
+            int capacity = 2;
+            while (capacity < values.size() * 2) {
+                capacity <<= 1;
+            }
+            this.keys = new String[capacity];
+            this.codes = new int[capacity];
+            this.mask = capacity - 1;
+            this.size = values.size();
+            int _nullCode = size;
+            for (Map.Entry<String, Integer> entry : values.entrySet()) {
+                if (entry.getKey() == null) {
+                    _nullCode = entry.getValue();
+                    continue;
+                }
+                int slot = getSlot(entry.getKey());
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = entry.getKey();
+                codes[slot] = entry.getValue();
+            }
+            this.nullCode = _nullCode;
+        }
+
+        /**
+         * Returns the code of the value, the overflow code if it is not contained
+         * @param value
+         * @return
+         */
+        int get(String value) {
+            if (value == null) {
+                return nullCode;
+            }
+            int slot = getSlot(value);
+            String key;
+            while ((key = keys[slot]) != null) {
+                if (key.equals(value)) {
+                    return codes[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return size;
+        }
+
+        /**
+         * Returns the initial slot of the value
+         * @param value
+         * @return
+         */
+        private int getSlot(String value) {
+            int hash = value.hashCode();
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+
+	/** Map for values, used until the dictionary is frozen */
     private final Map<String, Map<String, Integer>> map;
-	
+    /** Tables for values, null until the dictionary is frozen */
+    private volatile Map<String, Table>             tables;
+    /** Fingerprint of the content, calculated when the dictionary is frozen */
+    private long                                    fingerprint;
+
     /**
      * Default constructor for the Dictionary class.
      * Initializes an empty dictionary with an empty internal HashMap for attribute-value mappings.
@@ -34,21 +117,14 @@ public class Dictionary {
     public Dictionary() {
     	this.map = new HashMap<>();
     }
-    
-    /**
-     * Private constructor used for creating a deep copy of the Dictionary class.
-     * @param map 
-     */
-    private Dictionary(Map<String, Map<String, Integer>> map) {
-    	this.map = map;
-    }
-	
+
     /**
      * Adds all hierarchy values from the defined hierarchies in rRef to the dictionary.
      * @param attributeConfigs
      * @param referenceDataset
      */
     public void addAllPossibleHierarchyValues(List<AttributeConfig> attributeConfigs, Data referenceDataset) {
+        checkNotFrozen();
         for (AttributeConfig attributeConfig : attributeConfigs) {
             String[][] hierarchy = referenceDataset.getDefinition().getHierarchy(attributeConfig.getName());
             HashSet<String> uniqueValues = new HashSet<>();
@@ -62,11 +138,74 @@ public class Dictionary {
         }
     }
 
-    /** 
-     * Probe the dictionary returns integer coding of attribute value. If no coding exists it is created
+    /**
+     * Adds all distinct values of included categorical attributes in the reference dataset to the dictionary, as well
+     * as the label used for suppressed values.
+     * @param attributeConfigs
+     * @param referenceDataset
+     */
+    public void addAllValues(List<AttributeConfig> attributeConfigs, Data referenceDataset) {
+        checkNotFrozen();
+        DataHandle handle = referenceDataset.getHandle();
+        for (AttributeConfig attributeConfig : attributeConfigs) {
+            String attribute = attributeConfig.getName();
+            int column = handle.getColumnIndexOf(attribute);
+            if (!attributeConfig.getInclude() || column == -1 ||
+                !handle.getDefinition().getDataType(attribute).getDescription().getWrappedClass().equals(String.class)) {
+                continue;
+            }
+            for (String value : handle.getStatistics().getDistinctValues(column)) {
+                this.probe(attribute, value);
+            }
+            this.probe(attribute, "*");
+        }
+    }
+
+    /**
+     * Freezes the dictionary. Afterwards, values can not be added anymore and all values which are not contained
+     * are mapped to an overflow code, which is part of the size of each attribute.
+     */
+    public synchronized void freeze() {
+        checkNotFrozen();
+        Map<String, Table> _tables = new HashMap<>();
+        for (Map.Entry<String, Map<String, Integer>> entry : map.entrySet()) {
+            _tables.put(entry.getKey(), new Table(entry.getValue()));
+        }
+        this.fingerprint = getFingerprint(map);
+        this.tables = _tables;
+    }
+
+    /**
+     * Returns a fingerprint of the content of the frozen dictionary, which can be used to check whether feature
+     * vectors have been extracted with the same dictionary
+     */
+    public long getFingerprint() {
+        if (tables == null) {
+            throw new IllegalStateException("Dictionary is not frozen");
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns whether the dictionary is frozen
+     */
+    public boolean isFrozen() {
+        return tables != null;
+    }
+
+    /**
+     * Probe the dictionary returns integer coding of attribute value. If no coding exists it is created, or, if the
+     * dictionary is frozen, the overflow code is returned
      */
     public int probe(String attribute, String value) {
 
+        // Lookup in frozen dictionary
+        Map<String, Table> _tables = tables;
+        if (_tables != null) {
+            Table table = _tables.get(attribute);
+            return table != null ? table.get(value) : 0;
+        }
+
         // Get map
         Map<String, Integer> values = map.get(attribute);
         if (values == null) {
@@ -91,38 +230,70 @@ public class Dictionary {
      * @param uniqueValues
      */
     public void probeAll(String attribute, HashSet<String> uniqueValues) {
+        checkNotFrozen();
         for (String value : uniqueValues) {
             this.probe(attribute, value);
         }
     }
 
     /**
-     * Returns the size for the given dimension
+     * Returns the size for the given dimension, including the overflow code if the dictionary is frozen
      */
     public int size(String attribute) {
+        Map<String, Table> _tables = tables;
+        if (_tables != null) {
+            Table table = attribute != null ? _tables.get(attribute) : null;
+            return (table != null ? table.size : 0) + 1;
+        }
         if (attribute != null && this.map.get(attribute) != null) {
             return this.map.get(attribute).size();
         } else {
             return 0;
         }
     }
-    
+
+    /**
+     * Calculates a 64-bit FNV-1a hash over all attributes, values and codes
+     * @param map
+     * @return
+     */
+    private static long getFingerprint(Map<String, Map<String, Integer>> map) {
+        long hash = 0xcbf29ce484222325L;
+        String[] attributes = map.keySet().toArray(new String[0]);
+        Arrays.sort(attributes);
+        for (String attribute : attributes) {
+            Map<String, Integer> values = map.get(attribute);
+            String[] valuesByCode = new String[values.size()];
+            for (Map.Entry<String, Integer> entry : values.entrySet()) {
+                valuesByCode[entry.getValue()] = entry.getKey();
+            }
+            hash = getFingerprint(hash, attribute);
+            for (String value : valuesByCode) {
+                hash = getFingerprint(hash, value == null ? "\0" : value);
+            }
+        }
+        return hash;
+    }
+
     /**
-     * Custom clone method which also deep clones the Hashmap.
+     * Adds the characters of the string and a separator to the hash
+     * @param hash
+     * @param value
+     * @return
      */
-    @Override
-    public Dictionary clone() {
-        
-        Map<String, Map<String, Integer>> clonedMap = new HashMap<>();
-        for (Map.Entry<String, Map<String, Integer>> entry : this.map.entrySet()) {
-            String outerKey = entry.getKey();
-            Map<String, Integer> innerMap = entry.getValue();
-            Map<String, Integer> clonedInnerMap = new HashMap<>(innerMap);
-            clonedMap.put(outerKey, clonedInnerMap);
-        }
-        
-        return new Dictionary(clonedMap);
+    private static long getFingerprint(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ 0xffff) * 0x100000001b3L;
     }
-    
 
-}
\ No newline at end of file
+    /**
+     * Throws an exception if the dictionary is frozen
+     */
+    private void checkNotFrozen() {
+        if (tables != null) {
+            throw new IllegalStateException("Dictionary is frozen");
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.features;
+
+import org.bihmi.anonymization.config.AttributeConfig;
+import org.deidentifier.arx.DataHandle;
+import org.deidentifier.arx.DataType;
+
+import java.util.*;
+
+/**
+ * Columns of a data handle which are relevant for feature extraction, read once into primitive arrays.
+ * Numeric attributes are parsed into doubles (NaN for suppressed rows), values of categorical attributes are encoded
+ * with local codes, which are assigned in order of first appearance. Features can be computed from these arrays
+ * without accessing the handle again.
+ */
+class EncodedColumns {
+
+    /**
+     * A single encoded column
+     */
+    static class Column {
+
+        /** Attribute */
+        final String          attribute;
+        /** Attribute config */
+        final AttributeConfig attributeConfig;
+        /** Data type */
+        final DataType<?>     type;
+        /** Class wrapped by data type */
+        final Class<?>        clazz;
+        /** Parsed values per row, NaN for suppressed rows, null for categorical attributes */
+        final double[]        numeric;
+        /** Local codes per row, null for numeric attributes */
+        final int[]           codes;
+        /** Values per local code, in order of first appearance, null for numeric attributes */
+        final String[]        values;
+        /** Number of rows per local code, null for numeric attributes */
+        final int[]           counts;
+
+        /**
+         * Creates a numeric column
+         */
+        Column(String attribute, AttributeConfig attributeConfig, DataType<?> type, Class<?> clazz, double[] numeric) {
+            this.attribute = attribute;
+            this.attributeConfig = attributeConfig;
+            this.type = type;
+            this.clazz = clazz;
+            this.numeric = numeric;
+            this.codes = null;
+            this.values = null;
+            this.counts = null;
+        }
+
+        /**
+         * Creates a categorical column
+         */
+        Column(String attribute, AttributeConfig attributeConfig, DataType<?> type, Class<?> clazz, int[] codes, String[] values, int[] counts) {
+            this.attribute = attribute;
+            this.attributeConfig = attributeConfig;
+            this.type = type;
+            this.clazz = clazz;
+            this.numeric = null;
+            this.codes = codes;
+            this.values = values;
+            this.counts = counts;
+        }
+
+        /**
+         * Returns whether the column is numeric
+         */
+        boolean isNumeric() {
+            return numeric != null;
+        }
+    }
+
+    /** Number of rows */
+    final int                  numRows;
+    /** Rows which are not suppressed */
+    final boolean[]            rowLive;
+    /** Number of rows which are not suppressed */
+    final int                  numLiveRows;
+    /** Columns in order of the attribute configs */
+    final List<Column>         columns = new ArrayList<>();
+
+    /**
+     * Reads all included attributes to consider from the handle
+     * @param handle data to extract features from
+     * @param attributesToConsider attributes to consider for feature extraction
+     * @param attributeConfigs configuration of attributes in handle
+     */
+    EncodedColumns(DataHandle handle, Set<String> attributesToConsider, List<AttributeConfig> attributeConfigs) {
+
+        // Prepare
+        this.numRows = handle.getNumRows();
+        this.rowLive = new boolean[numRows];
+        int live = 0;
+        for (int row = 0; row < numRows; row++) {
+            if (!handle.isSuppressed(row)) {
+                rowLive[row] = true;
+                live++;
+            }
+        }
+        this.numLiveRows = live;
+
+        // For each attribute
+        for (AttributeConfig attributeConfig : attributeConfigs) {
+            if (!attributeConfig.getInclude() || !attributesToConsider.contains(attributeConfig.getName())) {
+                continue;
+            }
+
+            // Obtain attribute details
+            String attribute = attributeConfig.getName();
+            int column = handle.getColumnIndexOf(attribute);
+            DataType<?> type = handle.getDefinition().getDataType(attribute);
+            Class<?> clazz = type.getDescription().getWrappedClass();
+
+            // Parse numeric values of rows which are not suppressed
+            if (clazz.equals(Long.class) || clazz.equals(Double.class) || clazz.equals(Date.class)) {
+                ColumnReader reader = ColumnReader.create(handle, column, clazz);
+                double[] values = new double[numRows];
+                for (int row = 0; row < numRows; row++) {
+                    values[row] = rowLive[row] ? reader.read(row) : Double.NaN;
+                }
+                columns.add(new Column(attribute, attributeConfig, type, clazz, values));
+
+            // Encode categorical values of all rows
+            } else if (clazz.equals(String.class)) {
+                Map<String, Integer> localCodes = new HashMap<>();
+                List<String> values = new ArrayList<>();
+                int[] codes = new int[numRows];
+                int[] counts = new int[numRows];
+                for (int row = 0; row < numRows; row++) {
+                    String value = handle.getValue(row, column);
+                    Integer code = localCodes.get(value);
+                    if (code == null) {
+                        code = values.size();
+                        localCodes.put(value, code);
+                        values.add(value);
+                    }
+                    codes[row] = code;
+                    counts[code]++;
+                }
+                columns.add(new Column(attribute, attributeConfig, type, clazz, codes, values.toArray(new String[0]), Arrays.copyOf(counts, values.size())));
+            } else {
+                throw new IllegalStateException("Unknown data type");
+            }
+        }
+    }
+
+    /**
+     * Returns the column of the given attribute, null if it has not been read
+     * @param attribute
+     * @return
+     */
+    Column getColumn(String attribute) {
+        for (Column column : columns) {
+            if (column.attribute.equals(attribute)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Probes the dictionary for all values of a categorical column and returns the dictionary codes per local code
+     * @param column
+     * @param dictionary
+     * @return
+     */
+    static int[] probe(Column column, Dictionary dictionary) {
+        int[] result = new int[column.values.length];
+        for (int code = 0; code < result.length; code++) {
+            result[code] = dictionary.probe(column.attribute, column.values[code]);
+        }
+        return result;
+    }
+}
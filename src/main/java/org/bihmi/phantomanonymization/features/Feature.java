@@ -14,12 +14,8 @@
 
 package org.bihmi.phantomanonymization.features;
 
-import org.apache.commons.lang3.time.DateUtils;
-import org.deidentifier.arx.DataHandle;
 import org.deidentifier.arx.DataType;
 
-import java.text.ParseException;
-import java.util.Date;
 import java.util.Map;
 
 /**
@@ -43,33 +39,6 @@ public abstract class Feature {
         }
     }
 
-    /**
-     * Return double for numerical values
-     */
-    double getDouble(DataHandle handle, int row, int column, Class<?> _clazz) {
-        try {
-            // Calculate depending on data type
-            if (_clazz.equals(Long.class)) {
-                return handle.getLong(row, column);
-            } else if (_clazz.equals(Double.class)) {
-                String value = handle.getValue(row, column);
-                if (value != null && !value.equals("*")) {
-                    return Double.valueOf(handle.getValue(row, column));
-                }
-                return Double.NaN;
-            } else if (_clazz.equals(Date.class)) {
-                DataType.ARXDate dataType = (DataType.ARXDate) handle.getDefinition().getDataType(handle.getAttributeName(column));
-                String value = handle.getValue(row, column);
-                return DateUtils.parseDate(value, dataType.getLocale(), dataType.getFormat()).getTime();
-            } else {
-                throw new IllegalStateException("Attribute is not numeric");
-            }
-        } catch (ParseException e) {
-            // TODO Why caused by short heuristic searches?
-            throw new IllegalStateException(e);
-        }
-    }
-
     /**
      * Transforms array of arrays to flatten array
      */
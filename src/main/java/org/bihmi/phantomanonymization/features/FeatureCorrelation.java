@@ -14,11 +14,8 @@
 
 package org.bihmi.phantomanonymization.features;
 
-import org.apache.commons.math3.linear.OpenMapRealMatrix;
-import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
 import org.bihmi.anonymization.config.AttributeConfig;
 import org.deidentifier.arx.DataHandle;
-import org.deidentifier.arx.DataType;
 
 import java.util.*;
 
@@ -27,8 +24,8 @@ import java.util.*;
  */
 public class FeatureCorrelation extends Feature {
 
-    /** Features */
-    private final Map<String, OpenMapRealMatrix> categorical = new HashMap<>();
+    /** Features, dictionary codes of the values of rows which are not suppressed */
+    private final Map<String, int[]>             categorical = new HashMap<>();
     /** Features */
     private final Map<String, double[]>          numeric     = new HashMap<>();
     /** Rows */
@@ -44,82 +41,46 @@ public class FeatureCorrelation extends Feature {
     /**
      * Calculates correlation features using Pearson's product-moment correlation.
      * All columns of continuous attributes are directly used for correlation calculation.
-     * Categorical and ordinal attributes are transferred to a sparse representation
+     * Categorical and ordinal attributes are treated as indicator columns,
      * were each value becomes an own column and whether (or not) the value applies to a row
      * is indicated by the value 1d (or 0d). NaNs are replaced by 0D in the final result.
+     * The correlations are derived from sums of squares and cross products of centered numeric columns and from
+     * counts and co-occurrences of categorical values, so the indicator columns are never materialized.
      */
     public FeatureCorrelation(DataHandle handle, Set<String> attributesToConsider, List<AttributeConfig> attributeConfigs, Dictionary dictionary) {
+        this(new EncodedColumns(handle, attributesToConsider, attributeConfigs), attributesToConsider, attributeConfigs, dictionary);
+    }
+
+    /**
+     * Creates a new instance from columns which have already been read
+     */
+    FeatureCorrelation(EncodedColumns data, Set<String> attributesToConsider, List<AttributeConfig> attributeConfigs, Dictionary dictionary) {
         
         // Prepare
         this.attributeConfigs = attributeConfigs;
         this.dictionary = dictionary;
         this.attributesToConsider = attributesToConsider;
-        
-        // Check which rows are not suppressed
-        boolean[] rowLive = new boolean[handle.getNumRows()];
-        int numLiveRows = 0;
-        for(int row = 0; row < handle.getNumRows(); row++) {
-            if(!handle.isSuppressed(row)) {
-                rowLive[row] = true;
-                numLiveRows++;
-            }
-        }
-
-        // Prepare
-        this.rows = numLiveRows;
+        this.rows = data.numLiveRows;
 
         // For each attribute
-        for (AttributeConfig attributeConfig : attributeConfigs) {
-            if (!attributeConfig.getInclude() || !attributesToConsider.contains(attributeConfig.getName())) {
-                continue;
-            }
+        for (EncodedColumns.Column column : data.columns) {
 
-            String attribute = attributeConfig.getName();
-            // Obtain attribute details
-            int column = handle.getColumnIndexOf(attribute);
-            String attributeName = handle.getAttributeName(column);
-            DataType<?> _type = handle.getDefinition().getDataType(attributeName);
-            Class<?> _clazz = _type.getDescription().getWrappedClass();
+            String attribute = column.attribute;
 
             // Just store numeric values as is
-            if (_clazz.equals(Long.class) || _clazz.equals(Double.class) || _clazz.equals(Date.class)) {
+            if (column.isNumeric()) {
 
-                // Create array
-                double[] values = new double[numLiveRows];
-
-                // Copy values as double
-                int pos = 0;
-                for (int row = 0; row < values.length; row++) {
-                    if (rowLive[row]) {
-                        values[pos++] = getDouble(handle, row, column, _clazz);
-                    }
-                }
+                // Store values of rows which are not suppressed
+                numeric.put(attribute, ColumnStatistics.getLiveValues(column.numeric, data.rowLive, rows));
 
-                // Store
-                numeric.put(attribute, values);
-
-            } else if (_clazz.equals(String.class)) {
+            } else {
 
                 // Probe all values in advance
                 // (For ensuring the matrix is initialized with the required dimensions)
-                int[] _values = new int[numLiveRows];
-                int pos = 0;
-                for (int row = 0; row < handle.getNumRows(); row++) {
-                    if (rowLive[row]) {
-                        _values[pos++] = dictionary.probe(attribute, handle.getValue(row, column));
-                    }
-                }
-
-                // Create matrix
-                OpenMapRealMatrix matrix = new OpenMapRealMatrix(numLiveRows, dictionary.size(attribute));
-
-                // Store values
-                for (int row = 0; row < numLiveRows; row++) {
-                    matrix.setEntry(row, _values[row], 1);
-                }
+                int[] codes = EncodedColumns.probe(column, dictionary);
 
-                // Store
-                categorical.put(attribute, matrix);
+                // Store codes of rows which are not suppressed
+                categorical.put(attribute, ColumnStatistics.getLiveCodes(column.codes, codes, data.rowLive, rows));
             }
         }
     }
@@ -127,58 +88,134 @@ public class FeatureCorrelation extends Feature {
     @Override
     public double[] compile() {
 
-        // Count columns
-        int columns = 0;
-
-        // For each attribute
+        // Collect attributes and assign columns
+        List<String> attributes = new ArrayList<>();
         for (AttributeConfig attributeConfig : attributeConfigs) {
-            if (!attributeConfig.getInclude() || !attributesToConsider.contains(attributeConfig.getName())) {
-                continue;
-            }
-            String attribute = attributeConfig.getName();
-            if (numeric.containsKey(attribute)) {
-                columns++;
-            } else {
-                columns+=dictionary.size(attribute);
+            if (attributeConfig.getInclude() && attributesToConsider.contains(attributeConfig.getName())) {
+                attributes.add(attributeConfig.getName());
             }
         }
+        int[] offsets = new int[attributes.size()];
+        int[] widths = new int[attributes.size()];
+        int columns = 0;
+        for (int i = 0; i < attributes.size(); i++) {
+            String attribute = attributes.get(i);
+            offsets[i] = columns;
+            widths[i] = numeric.containsKey(attribute) ? 1 : dictionary.size(attribute);
+            columns += widths[i];
+        }
 
-        // Prepare matrix
-        OpenMapRealMatrix matrix = new OpenMapRealMatrix(rows, columns);
-        int column = 0;
-        for (AttributeConfig attributeConfig : attributeConfigs) {
-            if (!attributeConfig.getInclude() || !attributesToConsider.contains(attributeConfig.getName())) {
-                continue;
-            }
-            String attribute = attributeConfig.getName();
-            // Copy numeric data
-            if (numeric.containsKey(attribute)) {
-                double[] values = numeric.get(attribute);
+        // Center numeric columns and calculate sums of squares
+        double[][] centered = new double[attributes.size()][];
+        double[] squares = new double[columns];
+        for (int i = 0; i < attributes.size(); i++) {
+            double[] values = numeric.get(attributes.get(i));
+            if (values != null) {
+                double mean = 0d;
+                for (double value : values) {
+                    mean += value;
+                }
+                mean /= rows;
+                centered[i] = new double[rows];
                 for (int row = 0; row < rows; row++) {
-                    matrix.setEntry(row, column, values[row]);
+                    centered[i][row] = values[row] - mean;
+                    squares[offsets[i]] += centered[i][row] * centered[i][row];
                 }
-                column++;
+            }
+        }
 
-                // Copy categorical data
-            } else {
-                OpenMapRealMatrix _matrix = categorical.get(attribute);
-                for (int _column = 0; _column < dictionary.size(attribute); _column++) {
-                    if (_column < _matrix.getColumnDimension()) {
-                        for (int row = 0; row < rows; row++) {
-                            matrix.setEntry(row, column, _matrix.getEntry(row, _column));
+        // Count values of categorical columns, the sum of squares of an indicator column is count * (rows - count) / rows
+        int[][] counts = new int[attributes.size()][];
+        for (int i = 0; i < attributes.size(); i++) {
+            int[] codes = categorical.get(attributes.get(i));
+            if (codes != null) {
+                counts[i] = new int[widths[i]];
+                for (int code : codes) {
+                    counts[i][code]++;
+                }
+                for (int code = 0; code < widths[i]; code++) {
+                    squares[offsets[i] + code] = (double) counts[i][code] * (double) (rows - counts[i][code]) / (double) rows;
+                }
+            }
+        }
+
+        // Calculate cross products for each pair of attributes
+        double[][] result = new double[columns][columns];
+        for (int i = 0; i < attributes.size(); i++) {
+            for (int j = i; j < attributes.size(); j++) {
+                double[] products = new double[widths[i] * widths[j]];
+                if (i == j) {
+                    // Indicators of the same attribute never co-occur
+                    for (int a = 0; a < widths[i]; a++) {
+                        for (int b = 0; b < widths[i]; b++) {
+                            products[a * widths[i] + b] = a == b ? squares[offsets[i] + a] : -(double) counts[i][a] * (double) counts[i][b] / (double) rows;
+                        }
+                    }
+                } else if (centered[i] != null && centered[j] != null) {
+                    for (int row = 0; row < rows; row++) {
+                        products[0] += centered[i][row] * centered[j][row];
+                    }
+                } else if (centered[i] != null) {
+                    int[] codes = categorical.get(attributes.get(j));
+                    for (int row = 0; row < rows; row++) {
+                        products[codes[row]] += centered[i][row];
+                    }
+                } else if (centered[j] != null) {
+                    int[] codes = categorical.get(attributes.get(i));
+                    for (int row = 0; row < rows; row++) {
+                        products[codes[row]] += centered[j][row];
+                    }
+                } else {
+                    // Co-occurrences of values
+                    int[] codesI = categorical.get(attributes.get(i));
+                    int[] codesJ = categorical.get(attributes.get(j));
+                    for (int row = 0; row < rows; row++) {
+                        products[codesI[row] * widths[j] + codesJ[row]]++;
+                    }
+                    for (int a = 0; a < widths[i]; a++) {
+                        for (int b = 0; b < widths[j]; b++) {
+                            products[a * widths[j] + b] -= (double) counts[i][a] * (double) counts[j][b] / (double) rows;
                         }
                     }
-                    column++;
+                }
+
+                // Store correlations
+                for (int a = 0; a < widths[i]; a++) {
+                    for (int b = 0; b < widths[j]; b++) {
+                        int x = offsets[i] + a;
+                        int y = offsets[j] + b;
+                        double correlation = getCorrelation(products[a * widths[j] + b], squares[x], squares[y]);
+                        result[x][y] = correlation;
+                        result[y][x] = correlation;
+                    }
                 }
             }
         }
 
-        // Calculate
-        double[][] result = new PearsonsCorrelation().computeCorrelationMatrix(matrix).getData();
+        // Correlation of a column with itself is always one
+        for (int column = 0; column < columns; column++) {
+            result[column][column] = 1d;
+        }
+
         // Done
         return getUpperTriangleNoNaNs(result);
     }
 
+    /**
+     * Calculates Pearson's correlation coefficient from the centered cross product and sums of squares of two columns.
+     * Returns NaN if one of the columns is constant or there are less than two rows.
+     * @param product sum of products of centered values
+     * @param squaresX sum of squares of centered values of first column
+     * @param squaresY sum of squares of centered values of second column
+     * @return
+     */
+    private double getCorrelation(double product, double squaresX, double squaresY) {
+        if (rows < 2 || squaresX < 10 * Double.MIN_VALUE || squaresY < 10 * Double.MIN_VALUE) {
+            return Double.NaN;
+        }
+        double correlation = product / Math.sqrt(squaresX * squaresY);
+        return Math.max(-1d, Math.min(1d, correlation));
+    }
 
     /**
      * Removes the lower triangle of the matrix, since the values of lower and upper triangle are the same.
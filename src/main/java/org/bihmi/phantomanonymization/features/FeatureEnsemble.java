@@ -33,6 +33,8 @@ public class FeatureEnsemble extends Feature {
     private final FeatureHistogram histogram;
     /** Feature */
     private final FeatureNaive naive;
+    /** Feature, null if not included */
+    private final FeatureMarginals marginals;
 
     /**
      * Creates a new instance
@@ -44,9 +46,27 @@ public class FeatureEnsemble extends Feature {
      * @param numBins Number of bins to for continuous variables for Histogram feature extraction
      */
     public FeatureEnsemble(DataHandle handle, Set<String> attributesToConsider, List<AttributeConfig> attributeConfigs, Dictionary dictionary, Map<String, DataType<?>> dataTypes, int numBins) {
-        naive = new FeatureNaive(handle, attributesToConsider, attributeConfigs, dictionary, dataTypes);
-        histogram = new FeatureHistogram(handle, attributesToConsider, attributeConfigs, dictionary, dataTypes, numBins);
-        correlation = new FeatureCorrelation(handle, attributesToConsider, attributeConfigs, dictionary);
+        this(handle, attributesToConsider, attributeConfigs, dictionary, dataTypes, numBins, 0, 0);
+    }
+
+    /**
+     * Creates a new instance, which optionally includes marginals
+     * @param handle data to extract features from
+     * @param attributesToConsider attributes to consider for feature extraction
+     * @param attributeConfigs configuration of attributes in handle
+     * @param dictionary dictionary with mappings for categorical attributes
+     * @param dataTypes Map used to ensure consistency of data types
+     * @param numBins Number of bins to for continuous variables for Histogram feature extraction
+     * @param marginalsOrder Order of marginals to include, 0 if marginals are not included
+     * @param marginalsMaxDimension Maximal dimension of marginals, 0 if unlimited
+     */
+    public FeatureEnsemble(DataHandle handle, Set<String> attributesToConsider, List<AttributeConfig> attributeConfigs, Dictionary dictionary, Map<String, DataType<?>> dataTypes, int numBins, int marginalsOrder, int marginalsMaxDimension) {
+        // Read data once for all features
+        EncodedColumns data = new EncodedColumns(handle, attributesToConsider, attributeConfigs);
+        naive = new FeatureNaive(data, attributesToConsider, dictionary, dataTypes);
+        histogram = new FeatureHistogram(data, dictionary, dataTypes, numBins);
+        correlation = new FeatureCorrelation(data, attributesToConsider, attributeConfigs, dictionary);
+        marginals = marginalsOrder > 0 ? new FeatureMarginals(data, dictionary, dataTypes, numBins, marginalsOrder, marginalsMaxDimension) : null;
     }
 
     @Override
@@ -54,6 +74,9 @@ public class FeatureEnsemble extends Feature {
         double[] _naive = naive.compile();
         double[] _histogram = histogram.compile();
         double[] _correlation = correlation.compile();
+        if (marginals != null) {
+            return getFlattenedArray(_naive, _histogram, _correlation, marginals.compile());
+        }
         return getFlattenedArray(_naive, _histogram, _correlation);
     }
 }
@@ -17,7 +17,6 @@ package org.bihmi.phantomanonymization.features;
 import org.bihmi.anonymization.config.AttributeConfig;
 import org.deidentifier.arx.DataHandle;
 import org.deidentifier.arx.DataType;
-import org.deidentifier.arx.aggregates.StatisticsFrequencyDistribution;
 
 import java.util.*;
 
@@ -27,11 +26,15 @@ import java.util.*;
 public class FeatureHistogram extends Feature {
 
     /** Features, LinkedHashMap so order from attributeConfig is preserved */
-    private final LinkedHashMap<String, StatisticsFrequencyDistribution> categorical = new LinkedHashMap<>();
+    private final LinkedHashMap<String, EncodedColumns.Column> categorical = new LinkedHashMap<>();
     /** Features, LinkedHashMap so order from attributeConfig is preserved */
-    private final LinkedHashMap<String, double[]>                        numeric     = new LinkedHashMap<>();
+    private final LinkedHashMap<String, double[]>              numeric     = new LinkedHashMap<>();
+    /** Dictionary codes per local code of categorical attributes */
+    private final Map<String, int[]>                           codes       = new HashMap<>();
+    /** Number of rows */
+    private final int                                          rows;
     /** Dictionary */
-    private final Dictionary                                             dictionary;
+    private final Dictionary                                   dictionary;
 
     /**
      * Creates a new cinstance.
@@ -39,60 +42,28 @@ public class FeatureHistogram extends Feature {
      * For continuous and ordinal attributes, the domain of the values is separated into 10 bins.
      */
     public FeatureHistogram(DataHandle handle, Set<String> attributesToConsider, List<AttributeConfig> attributeConfigs, Dictionary dictionary, Map<String, DataType<?>> dataTypes, int numBins) {
+        this(new EncodedColumns(handle, attributesToConsider, attributeConfigs), dictionary, dataTypes, numBins);
+    }
+
+    /**
+     * Creates a new instance from columns which have already been read
+     */
+    FeatureHistogram(EncodedColumns data, Dictionary dictionary, Map<String, DataType<?>> dataTypes, int numBins) {
         this.dictionary = dictionary;
+        this.rows = data.numRows;
         // For each attribute
-        for (AttributeConfig attributeConfig : attributeConfigs) {
-            if (!attributeConfig.getInclude() || !attributesToConsider.contains(attributeConfig.getName())) {
-                continue;
-            }
+        for (EncodedColumns.Column column : data.columns) {
 
-            String attribute = attributeConfig.getName();
+            String attribute = column.attribute;
             // Obtain attribute details
-            int column = handle.getColumnIndexOf(attribute);
-            DataType<?> _type = handle.getDefinition().getDataType(attribute);
-            Class<?> _clazz = _type.getDescription().getWrappedClass();
-            checkDataType(attribute, _type, dataTypes);
+            checkDataType(attribute, column.type, dataTypes);
 
             // Put numerical attributes into bins
-            if (_clazz.equals(Long.class) || _clazz.equals(Double.class) || _clazz.equals(Date.class)) {
-                double min;
-                double max;
-                if (_clazz.equals(Date.class)) {
-                    min = ((Date) attributeConfig.getMin()).getTime();
-                    max = ((Date) attributeConfig.getMax()).getTime();
-                } else {
-                    min = ((Number) attributeConfig.getMin()).doubleValue();
-                    max = ((Number) attributeConfig.getMax()).doubleValue();
-                }
-                if (Math.abs(max - min) < 0.000001) {
-                    throw new RuntimeException("Max and min equal");
-                }
-                
-                double binSize = (max - min) / numBins;
+            if (column.isNumeric()) {
                 double[] freqs = new double[numBins];
-
-                // For each value
-                for (int row = 0; row < handle.getNumRows(); row++) {
-
+                for (int bin : getBins(data, column, numBins)) {
                     // Check is row suppressed
-                    if (!handle.isSuppressed(row)) {
-
-                        // Parse value
-                        double value = getDouble(handle, row, column, _clazz);
-
-                        // Calculate bin
-                        int bin = (int) ((value - min) / binSize);
-
-                        // Can happen if hierarchy contains values smaller than the values contained in the dataset itself
-                        if (bin < 0) {
-                            bin = 0;
-                        }
-                        
-                        // Can happen if hierarchy contains values bigger than the values contained in the dataset itself
-                        if (bin >= numBins) {
-                            bin = numBins - 1;
-                        }
-
+                    if (bin != -1) {
                         // Increment frequency of bin
                         freqs[bin] += 1d;
                     }
@@ -102,14 +73,65 @@ public class FeatureHistogram extends Feature {
                 numeric.put(attribute, freqs);
 
                 // Frequency distribution for categorical attributes
-            } else if (_clazz.equals(String.class)) {
-                StatisticsFrequencyDistribution frequencyDistribution = handle.getStatistics().getFrequencyDistribution(column);
-                categorical.put(attribute, frequencyDistribution);
-                for (String value : frequencyDistribution.values) {
-                    dictionary.probe(attribute, value);
-                }
+            } else {
+                // Probe values in advance, so that dimensions are known before compiling
+                categorical.put(attribute, column);
+                codes.put(attribute, EncodedColumns.probe(column, dictionary));
+            }
+        }
+    }
+
+    /**
+     * Returns the bin of the value of each row of a numerical column, -1 for suppressed rows
+     * @param data
+     * @param column
+     * @param numBins
+     * @return
+     */
+    static int[] getBins(EncodedColumns data, EncodedColumns.Column column, int numBins) {
+        
+        // Determine domain
+        AttributeConfig attributeConfig = column.attributeConfig;
+        double min;
+        double max;
+        if (column.clazz.equals(Date.class)) {
+            min = ((Date) attributeConfig.getMin()).getTime();
+            max = ((Date) attributeConfig.getMax()).getTime();
+        } else {
+            min = ((Number) attributeConfig.getMin()).doubleValue();
+            max = ((Number) attributeConfig.getMax()).doubleValue();
+        }
+        if (Math.abs(max - min) < 0.000001) {
+            throw new RuntimeException("Max and min equal");
+        }
+        
+        double binSize = (max - min) / numBins;
+        int[] bins = new int[data.numRows];
+
+        // For each value
+        for (int row = 0; row < data.numRows; row++) {
+
+            // Check is row suppressed
+            if (!data.rowLive[row]) {
+                bins[row] = -1;
+                continue;
+            }
+
+            // Calculate bin
+            int bin = (int) ((column.numeric[row] - min) / binSize);
+
+            // Can happen if hierarchy contains values smaller than the values contained in the dataset itself
+            if (bin < 0) {
+                bin = 0;
+            }
+            
+            // Can happen if hierarchy contains values bigger than the values contained in the dataset itself
+            if (bin >= numBins) {
+                bin = numBins - 1;
             }
+            bins[row] = bin;
         }
+        return bins;
     }
 
     @Override
@@ -121,13 +143,14 @@ public class FeatureHistogram extends Feature {
             features.add(numeric.get(attribute));
         }
         for (String attribute : categorical.keySet()) {
-            StatisticsFrequencyDistribution distribution = categorical.get(attribute);
+            EncodedColumns.Column column = categorical.get(attribute);
+            int[] _codes = codes.get(attribute);
             double[] feature = new double[dictionary.size(attribute)];
-            for (int i = 0; i < distribution.values.length; i++) {
-                String value = distribution.values[i];
-                double count = distribution.frequency[i] * distribution.count;
-                int code = dictionary.probe(attribute, value);
-                feature[code] = count;
+            for (int i = 0; i < column.values.length; i++) {
+                // Same arithmetic as frequency * count of a frequency distribution
+                double count = ((double) column.counts[i] / (double) rows) * rows;
+                // Values unknown to a frozen dictionary share the overflow code
+                feature[_codes[i]] += count;
             }
             features.add(feature);
         }
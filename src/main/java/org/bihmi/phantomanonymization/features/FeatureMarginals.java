@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.features;
+
+import org.bihmi.anonymization.config.AttributeConfig;
+import org.deidentifier.arx.DataHandle;
+import org.deidentifier.arx.DataType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Marginals feature
+ */
+public class FeatureMarginals extends Feature {
+
+    /** Largest supported dimension of the feature vector */
+    public static final int      MAX_DIMENSION = 1 << 20;
+
+    /** Counts of combinations of values, keyed by their index in the feature vector without hashing */
+    private final LongIntHashMap counts;
+    /** Dimension of the feature vector without hashing */
+    private final long           dimension;
+    /** Maximal dimension of the feature vector, 0 if unlimited */
+    private final int            maxDimension;
+
+    /**
+     * Creates a new instance.
+     * Counts how often each combination of values of two (and optionally three) attributes occurs in rows which are
+     * not suppressed. Values of categorical attributes are represented by their codes in the dictionary, values of
+     * continuous attributes by their histogram bin. The dimension of the feature vector is the sum of the sizes of
+     * the domains of all combinations. If it exceeds the maximal dimension, combinations are hashed into the
+     * maximal number of buckets. The maximal dimension is limited to {@link #MAX_DIMENSION}, which also applies if
+     * it is unlimited.
+     * @param handle data to extract features from
+     * @param attributesToConsider attributes to consider for feature extraction
+     * @param attributeConfigs configuration of attributes in handle
+     * @param dictionary frozen dictionary with mappings for categorical attributes
+     * @param dataTypes Map used to ensure consistency of data types
+     * @param numBins Number of bins for continuous attributes
+     * @param order Number of attributes combined, 2 or 3
+     * @param maxDimension Maximal dimension of the feature vector, 0 if unlimited, at most {@link #MAX_DIMENSION}
+     */
+    public FeatureMarginals(DataHandle handle, Set<String> attributesToConsider, List<AttributeConfig> attributeConfigs, Dictionary dictionary, Map<String, DataType<?>> dataTypes, int numBins, int order, int maxDimension) {
+        this(new EncodedColumns(handle, attributesToConsider, attributeConfigs), dictionary, dataTypes, numBins, order, maxDimension);
+    }
+
+    /**
+     * Creates a new instance from columns which have already been read
+     */
+    FeatureMarginals(EncodedColumns data, Dictionary dictionary, Map<String, DataType<?>> dataTypes, int numBins, int order, int maxDimension) {
+
+        // Check
+        if (order != 2 && order != 3) {
+            throw new IllegalArgumentException("Order of marginals must be 2 or 3: " + order);
+        }
+        if (!dictionary.isFrozen()) {
+            throw new IllegalStateException("Marginals require a frozen dictionary");
+        }
+        if (maxDimension < 0 || maxDimension > MAX_DIMENSION) {
+            throw new IllegalArgumentException("Maximal dimension of marginals must be between 0 and " + MAX_DIMENSION + ": " + maxDimension);
+        }
+        this.maxDimension = maxDimension;
+
+        // Encode values of each attribute
+        int attributes = data.columns.size();
+        int[][] codes = new int[attributes][];
+        long[] domains = new long[attributes];
+        for (int i = 0; i < attributes; i++) {
+            EncodedColumns.Column column = data.columns.get(i);
+            checkDataType(column.attribute, column.type, dataTypes);
+            if (column.isNumeric()) {
+                codes[i] = FeatureHistogram.getBins(data, column, numBins);
+                domains[i] = numBins;
+            } else {
+                int[] mapping = EncodedColumns.probe(column, dictionary);
+                codes[i] = new int[data.numRows];
+                for (int row = 0; row < data.numRows; row++) {
+                    codes[i][row] = mapping[column.codes[row]];
+                }
+                domains[i] = dictionary.size(column.attribute);
+            }
+        }
+
+        // Enumerate combinations and their offsets in the feature vector
+        List<int[]> combinations = new ArrayList<>();
+        for (int i = 0; i < attributes; i++) {
+            for (int j = i + 1; j < attributes; j++) {
+                combinations.add(new int[] {i, j});
+            }
+        }
+        if (order == 3) {
+            for (int i = 0; i < attributes; i++) {
+                for (int j = i + 1; j < attributes; j++) {
+                    for (int k = j + 1; k < attributes; k++) {
+                        combinations.add(new int[] {i, j, k});
+                    }
+                }
+            }
+        }
+        long[] offsets = new long[combinations.size()];
+        long _dimension = 0;
+        for (int c = 0; c < offsets.length; c++) {
+            offsets[c] = _dimension;
+            long size = 1;
+            for (int attribute : combinations.get(c)) {
+                size *= domains[attribute];
+            }
+            _dimension += size;
+        }
+        this.dimension = _dimension;
+        if (this.maxDimension == 0 && dimension > MAX_DIMENSION) {
+            throw new IllegalArgumentException("Too many combinations of values for marginals (" + dimension + "), a maximal dimension must be specified");
+        }
+
+        // Count combinations in rows which are not suppressed
+        this.counts = new LongIntHashMap(data.numLiveRows);
+        for (int row = 0; row < data.numRows; row++) {
+            if (!data.rowLive[row]) {
+                continue;
+            }
+            for (int c = 0; c < offsets.length; c++) {
+                long key = 0;
+                for (int attribute : combinations.get(c)) {
+                    key = key * domains[attribute] + codes[attribute][row];
+                }
+                counts.add(offsets[c] + key, 1);
+            }
+        }
+    }
+
+    @Override
+    public double[] compile() {
+
+        // Prepare
+        boolean hashing = maxDimension > 0 && dimension > maxDimension;
+        double[] result = new double[hashing ? maxDimension : (int) dimension];
+
+        // Copy counts
+        long[] keys = counts.getSlotKeys();
+        int[] values = counts.getSlotValues();
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != -1L) {
+                int index = hashing ? getBucket(keys[slot]) : (int) keys[slot];
+                result[index] += values[slot];
+            }
+        }
+
+        // Done
+        return result;
+    }
+
+    /**
+     * Returns the bucket of the given index when hashing
+     * @param index
+     * @return
+     */
+    private int getBucket(long index) {
+        long hash = index * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 29;
+        return (int) Math.floorMod(hash, (long) maxDimension);
+    }
+}
@@ -17,7 +17,6 @@ package org.bihmi.phantomanonymization.features;
 import org.bihmi.anonymization.config.AttributeConfig;
 import org.deidentifier.arx.DataHandle;
 import org.deidentifier.arx.DataType;
-import org.deidentifier.arx.aggregates.StatisticsSummary;
 
 import java.util.*;
 
@@ -33,6 +32,9 @@ public class FeatureNaive extends Feature {
      * Creates a new instance
      * Creates a flattened vector with mean, median and var for each numerical attribute and least frequent element, most
      * frequent element and number of unique elements for each categorical attributes.
+     * Numerical statistics are calculated from rows which are not suppressed. For an even number of values, the median
+     * is the mean of the two middle values. Ties between least or most frequent elements are resolved in favour of the
+     * element which appears first in the data.
      * Categorical attribute String values are mapped to integer codes based on mapping in Dictionary. Dictionary can be
      * empty and codes will then be generated on the fly.
      * @param handle data to extract features from
@@ -41,26 +43,20 @@ public class FeatureNaive extends Feature {
      * @param dictionary dictionary with mappings for categorical attributes
      * @param dataTypes Map used to ensure consistency of data types
      */
-    @SuppressWarnings("unchecked")
     public FeatureNaive(DataHandle handle, Set<String> attributesToConsider, List<AttributeConfig> attributeConfigs, Dictionary dictionary, Map<String, DataType<?>> dataTypes) {
+        this(new EncodedColumns(handle, attributesToConsider, attributeConfigs), attributesToConsider, dictionary, dataTypes);
+    }
 
-        // Prepare
-        int countAttributesToConsider = 0;
-
-        // Calculate statistics
-        Map<String, StatisticsSummary<?>> statistics = handle.getStatistics().getSummaryStatistics(false);
-
-        Set<String> attributesIncludes = new HashSet<>();
-        for (AttributeConfig attributeConfig: attributeConfigs) {
-            if (attributeConfig.getInclude()) {
-                attributesIncludes.add(attributeConfig.getName());
-                if (attributesToConsider.contains(attributeConfig.getName())) {
-                    countAttributesToConsider++;
-                }
-            }
-        }
+    /**
+     * Creates a new instance from columns which have already been read
+     * @param data encoded columns of the data to extract features from
+     * @param attributesToConsider attributes to consider for feature extraction
+     * @param dictionary dictionary with mappings for categorical attributes
+     * @param dataTypes Map used to ensure consistency of data types
+     */
+    FeatureNaive(EncodedColumns data, Set<String> attributesToConsider, Dictionary dictionary, Map<String, DataType<?>> dataTypes) {
 
-        features = new double[countAttributesToConsider * 3];
+        features = new double[data.columns.size() * 3];
 
         // For each attribute
         int index = 0;
@@ -69,109 +65,36 @@ public class FeatureNaive extends Feature {
         for (String attribute : attributes) {
             
             // Check
-            if (!attributesIncludes.contains(attribute)) {
+            EncodedColumns.Column column = data.getColumn(attribute);
+            if (column == null) {
                 continue;
             }
-            
-            // Index
-            int column = handle.getColumnIndexOf(attribute);
 
             // Obtain statistics
-            StatisticsSummary<?> summary = statistics.get(attribute);
-            DataType<?> _type = handle.getDefinition().getDataType(attribute);
-            Class<?> _clazz = _type.getDescription().getWrappedClass();
-            checkDataType(attribute, _type, dataTypes);
-
-            // Parameters to calculate
-            Double mostFreq = null;
-            Double leastFreq = null;
-            Double uniqueElements = null;
-            Double mean = null;
-            Double median = null;
-            Double var = null;
+            checkDataType(attribute, column.type, dataTypes);
 
             // Calculate depending on data type
-            if (_clazz.equals(Long.class)) {
-
-                // Handle data type represented as long
-                DataType<Long> type = (DataType<Long>)_type;
-                mean = summary.getArithmeticMeanAsDouble();
-                var = summary.getSampleVarianceAsDouble();
-                Long _median = type.parse(summary.getMedianAsString());
-                median = _median != null ? _median.doubleValue() : 0d; // TODO: how to handle null here
-
-            } else if (_clazz.equals(Double.class)) {
-
-                // Handle data type represented as double
-                DataType<Double> type = (DataType<Double>)_type;
-                mean = summary.getArithmeticMeanAsDouble();
-                var = summary.getSampleVarianceAsDouble();
-                Double _median = type.parse(summary.getMedianAsString());
-                median = _median != null ? _median : 0d; // TODO: how to handle null here
-
-            } else if (_clazz.equals(Date.class)) {
-
-                // Handle data type represented as date
-                DataType<Date> type = (DataType<Date>)_type;
-                mean = summary.getArithmeticMeanAsDouble();
-                var = summary.getSampleVarianceAsDouble();
-                Date _median = type.parse(summary.getMedianAsString());
-                median = _median != null ? _median.getTime() : 0d; // TODO: how to handle null here
-
-            } else if (_clazz.equals(String.class)) {
-
-                // Count frequencies of values
-                Map<String, Integer> map = new HashMap<>();
-                for (int row = 0; row < handle.getNumRows(); row++) {
-                    String value = handle.getValue(row, column);
-                    Integer count = map.get(value);
-                    if (count == null) {
-                        count = 1;
-                    } else {
-                        count++;
-                    }
-                    map.put(value, count);
-                }
-
-                // Determine codes with highest and lowest frequencies
-                int minFreq = Integer.MAX_VALUE;
-                int maxFreq = Integer.MIN_VALUE;
-
-                // Find most and least frequent
-                for (Map.Entry<String, Integer> entry : map.entrySet()) {
-                    String value = entry.getKey();
-                    Integer count = entry.getValue();
-                    double code = dictionary.probe(attribute, value);
-                    if (count < minFreq) {
-                        minFreq = count;
-                        leastFreq = code;
-                    }
-                    if (count > maxFreq) {
-                        maxFreq = count;
-                        mostFreq = code;
-                    }
-                }
-
-                // Get number of assigned keys
-                uniqueElements = (double) map.size();
+            if (column.isNumeric()) {
 
+                // Handle data types represented as long, double or date
+                double[] moments = ColumnStatistics.getMoments(column.numeric);
+                features[index] = moments[0];
+                features[index + 1] = moments[1];
+                features[index + 2] = moments[2];
 
             } else {
-                throw new IllegalStateException("Unknown data type");
-            }
 
-            // Switch feature type
-            if (mean != null && var != null && median != null) {
-                features[index] = mean;
-                features[index + 1] = median;
-                features[index + 2] = var;
-            } else if (mostFreq != null && leastFreq != null && uniqueElements != null) {
-                features[index] = leastFreq;
-                features[index + 1] = mostFreq;
-                features[index + 2] = uniqueElements;
-            } else {
-                throw new IllegalStateException("Features unavailable");
+                // Determine codes with highest and lowest frequencies, ties are resolved in order of first appearance
+                int least = ColumnStatistics.getLeastFrequent(column.counts);
+                int most = ColumnStatistics.getMostFrequent(column.counts);
+
+                // Least frequent element, most frequent element and number of unique elements
+                int[] codes = EncodedColumns.probe(column, dictionary);
+                features[index] = codes[least];
+                features[index + 1] = codes[most];
+                features[index + 2] = column.values.length;
             }
+
             // Increment feature index
             index += 3;
         }
@@ -26,5 +26,7 @@ public enum FeatureType {
     /** Histogram feature*/
     HISTOGRAM,
     /** Naive feature*/
-    NAIVE
+    NAIVE,
+    /** Marginals feature*/
+    MARGINALS
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.features;
+
+import java.util.Arrays;
+
+/**
+ * Simple open-addressing hash map from non-negative long keys to int values, which does not box keys or values
+ */
+class LongIntHashMap {
+
+    /** Marker for empty slots */
+    private static final long EMPTY = -1L;
+
+    /** Keys */
+    private long[] keys;
+    /** Values */
+    private int[]  values;
+    /** Number of entries */
+    private int    size;
+
+    /**
+     * Creates a new instance
+     * @param expectedSize expected number of entries
+     */
+    LongIntHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Adds the given value to the value stored for the key, which is initially 0
+     * @param key non-negative key
+     * @param value
+     */
+    void add(long key, int value) {
+        int slot = getSlot(key, keys.length - 1);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] += value;
+                return;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Returns the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the keys of all slots, empty slots are marked with -1
+     */
+    long[] getSlotKeys() {
+        return keys;
+    }
+
+    /**
+     * Returns the values of all slots
+     */
+    int[] getSlotValues() {
+        return values;
+    }
+
+    /**
+     * Doubles the capacity
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = getSlot(oldKeys[i], keys.length - 1);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the initial slot of the key
+     * @param key
+     * @param mask
+     * @return
+     */
+    private static int getSlot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -18,20 +18,23 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.bihmi.anonymization.config.AnonymizationConfig;
 import org.bihmi.anonymization.config.DataConfig;
-import org.bihmi.anonymization.data.DataLoader;
 import org.bihmi.phantomanonymization.config.BaseConfig;
+import org.bihmi.phantomanonymization.config.ClassifierConfig;
 import org.bihmi.phantomanonymization.config.ConfigWriter;
 import org.bihmi.phantomanonymization.config.RiskAssessmentConfig;
-import org.bihmi.phantomanonymization.target.TargetSelection;
-import org.deidentifier.arx.Data;
+import org.bihmi.phantomanonymization.phantom.UtilityMetric;
+import org.bihmi.phantomanonymization.target.TargetDistanceIndex;
 
 /**
  * Writer for reports
@@ -42,6 +45,8 @@ public class ReportWriter {
     private final File logFile;
     /** Summary file*/
     private final File summaryFile;
+    /** Directory and experiment name, which prefix the names of all files */
+    private final String prefix;
 
     /**
      * Creates a new instance
@@ -55,6 +60,7 @@ public class ReportWriter {
     public ReportWriter(String directory, String experimentName, RiskAssessmentConfig riskAssessmentConfig, AnonymizationConfig anonymizationConfig, DataConfig dataConfig) throws IOException {
         
         // Create files
+        prefix = directory + experimentName;
         logFile = new File(directory + experimentName + "_log.csv");
         summaryFile = new File(directory + experimentName + "_summary.txt");
         
@@ -70,31 +76,36 @@ public class ReportWriter {
         new ConfigWriter().writeBaseConfig(directory + experimentName + "_cfgs.yml", baseConfig);
         
         // Writer header to log file
-        writeToLogFile(Collections.singleton("TestRun;TargetId;Iteration;TrueLabel;PredictedLabel;PredictionProbability;Granularity;GranularityCategoricalAttributes;Entropy;Discernibility;MaximalEquivalenceClassSize;AverageEquivalenceClassSize;MinimalEquivalenceClassSize;NumberOfSuppressedRecords;LocationAndLimits;ClassificationAccuracy"));
+        StringBuilder header = new StringBuilder("TestRun;TargetId;Iteration;TrueLabel;PredictedLabel;PredictionProbability");
+        Set<UtilityMetric> metrics = EnumSet.noneOf(UtilityMetric.class);
+        metrics.addAll(riskAssessmentConfig.getMetrics());
+        for (UtilityMetric metric : metrics) {
+            header.append(";").append(metric.getColumn());
+        }
+        header.append(";LocalGeneralizationIterations");
+        List<ClassifierConfig> grid = riskAssessmentConfig.getClassifierGrid();
+        for (int i = 0; i < grid.size(); i++) {
+            String label = grid.get(i).getLabel(i);
+            header.append(";PredictedLabel_").append(label).append(";PredictionProbability_").append(label);
+        }
+        writeToLogFile(Collections.singleton(header.toString()));
     }
 
     /**
      * Write summary file
      * @param riskAssessmentConfig
-     * @param dataConfig
+     * @param distanceIndex distances of all records of the population
      * @param trueGuesses
+     * @param executedTests
      * @throws IOException
-     * @throws ParseException
      */
-    public void writeSummaryFile(RiskAssessmentConfig riskAssessmentConfig, DataConfig dataConfig,  Map<Integer, AtomicInteger> trueGuesses) throws IOException, ParseException {
+    public void writeSummaryFile(RiskAssessmentConfig riskAssessmentConfig, TargetDistanceIndex distanceIndex,  Map<Integer, AtomicInteger> trueGuesses, Map<Integer, AtomicInteger> executedTests) throws IOException {
         
         // Create writer
         BufferedWriter writer = new BufferedWriter(new FileWriter(summaryFile, true));
         writer.append("TargetId;Distance;Accuracy");
         writer.newLine();
         
-        // Create dataset and model to calculate distance
-        Data dataset = DataLoader.getData(dataConfig);
-        TargetSelection targetSelection = new TargetSelection(dataset);
-
-        // Calculate number of tests
-        int executedTestsPerTarget = riskAssessmentConfig.getRunCount() * riskAssessmentConfig.getRunTestCount() * 2;
-        
         // Write result for each true guess
         for (Map.Entry<Integer, AtomicInteger> entry : trueGuesses.entrySet()) {
             
@@ -102,10 +113,10 @@ public class ReportWriter {
             int targetId = entry.getKey();
             
             // Get distance
-            double distance = targetSelection.getNormalizedDistance(targetId);
+            double distance = distanceIndex.getNormalizedDistance(targetId);
             
-            // Get accuracy
-            double accuracy = (double) entry.getValue().get() / executedTestsPerTarget;
+            // Get accuracy (tests of samples which exceeded the time budget may have been excluded)
+            String accuracy = getAccuracy(entry.getValue().get(), executedTests.get(targetId).get());
             
             // Write
             writer.append(targetId + ";" + distance + ";" + accuracy);
@@ -116,6 +127,115 @@ public class ReportWriter {
         writer.close();
     }
 
+    /**
+     * Writes latency percentiles of the anonymizations performed to a latency file next to the summary file
+     * @param durations durations in milliseconds
+     * @param overBudget number of anonymizations which exceeded the time budget
+     * @param failed number of sample pairs excluded because an anonymization exceeded the time budget
+     * @throws IOException
+     */
+    public void writeLatencySummary(List<Long> durations, int overBudget, int failed) throws IOException {
+        
+        // Prepare
+        long[] sorted = new long[durations.size()];
+        synchronized (durations) {
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = durations.get(i);
+            }
+        }
+        Arrays.sort(sorted);
+        
+        // Write
+        BufferedWriter writer = new BufferedWriter(new FileWriter(prefix + "_latency.txt"));
+        writer.append("Anonymizations;LatencyP50;LatencyP90;LatencyP99;LatencyMax;OverBudget;FailedSamplePairs");
+        writer.newLine();
+        writer.append(sorted.length + ";" + getPercentile(sorted, 0.5d) + ";" + getPercentile(sorted, 0.9d) + ";" + 
+                      getPercentile(sorted, 0.99d) + ";" + getPercentile(sorted, 1d) + ";" + overBudget + ";" + failed);
+        writer.newLine();
+        
+        // Done
+        writer.close();
+    }
+
+    /**
+     * Writes the distribution of classifier training times and the dimension of feature vectors to a training file next
+     * to the summary file
+     * @param durations training times in milliseconds
+     * @param featureDimension size of feature vectors
+     * @param reducedDimension size of feature vectors after dimensionality reduction
+     * @throws IOException
+     */
+    public void writeTrainingSummary(List<Long> durations, int featureDimension, int reducedDimension) throws IOException {
+        
+        // Prepare
+        long[] sorted = new long[durations.size()];
+        long total = 0L;
+        synchronized (durations) {
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = durations.get(i);
+                total += sorted[i];
+            }
+        }
+        Arrays.sort(sorted);
+        
+        // Write
+        BufferedWriter writer = new BufferedWriter(new FileWriter(prefix + "_training.txt"));
+        writer.append("Trainings;TrainingTimeTotal;TrainingTimeP50;TrainingTimeP90;TrainingTimeMax;FeatureDimension;ReducedDimension");
+        writer.newLine();
+        writer.append(sorted.length + ";" + total + ";" + getPercentile(sorted, 0.5d) + ";" + getPercentile(sorted, 0.9d) + ";" +
+                      getPercentile(sorted, 1d) + ";" + featureDimension + ";" + reducedDimension);
+        writer.newLine();
+        
+        // Done
+        writer.close();
+    }
+
+    /**
+     * Writes the accuracy of each configuration of the classifier grid to a grid file next to the summary file
+     * @param grid classifier configurations
+     * @param trueGuesses number of correct predictions per configuration
+     * @param executedTests number of predictions per configuration
+     * @throws IOException
+     */
+    public void writeGridSummary(List<ClassifierConfig> grid, AtomicIntegerArray trueGuesses, int executedTests) throws IOException {
+        
+        // Write
+        BufferedWriter writer = new BufferedWriter(new FileWriter(prefix + "_grid.txt"));
+        writer.append("Classifier;Accuracy");
+        writer.newLine();
+        for (int i = 0; i < grid.size(); i++) {
+            writer.append(grid.get(i).getLabel(i) + ";" + getAccuracy(trueGuesses.get(i), executedTests));
+            writer.newLine();
+        }
+        
+        // Done
+        writer.close();
+    }
+
+    /**
+     * Returns the accuracy as a string, which is empty if no tests were executed
+     * @param trueGuesses
+     * @param executedTests
+     * @return
+     */
+    private String getAccuracy(int trueGuesses, int executedTests) {
+        return executedTests == 0 ? "" : String.valueOf((double) trueGuesses / executedTests);
+    }
+
+    /**
+     * Returns the percentile of the sorted values using the nearest-rank method, or 0 if there are no values
+     * @param sorted
+     * @param percentile
+     * @return
+     */
+    private long getPercentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
     /**
      * Append lines to the log file
      * @param lines
@@ -16,8 +16,12 @@ package org.bihmi.phantomanonymization.phantom;
 
 import static org.bihmi.phantomanonymization.io.DataLoader.getNewDataWithSameConfig;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -37,6 +41,7 @@ import org.bihmi.anonymization.config.DataConfig;
 import org.bihmi.phantomanonymization.config.ConfigReader;
 import org.bihmi.phantomanonymization.config.ConfigWriter;
 import org.bihmi.phantomanonymization.config.RiskAssessmentConfig;
+import org.bihmi.phantomanonymization.features.FeatureType;
 import org.deidentifier.arx.Data;
 import org.deidentifier.arx.DataHandle;
 
@@ -187,7 +192,9 @@ public class Checkpoint {
     }
     
     /**
-     * Checks whether a specific sample file is contained in the folder.
+     * Checks whether a specific sample file is contained in the folder. For test samples, the file containing the
+     * statistics must exist as well, as it is only written once the statistics have been computed, which may be
+     * after the data and the features have been saved.
      * 
      * @param target targets index in the dataset
      * @param runNumber number of current run
@@ -198,7 +205,13 @@ public class Checkpoint {
     public boolean checkExistence(int target, int runNumber, int iterationNumber, ArtifactType artifactType) {
         // TODO: Should those files have an ending (e.g. ".checkpoint") as well?
     	String fileName = target + "_" + runNumber + "_" + iterationNumber  + "_" + artifactType.fileName;
-    	return useSavedData && availableFiles.contains(fileName);
+    	if (!useSavedData || !availableFiles.contains(fileName)) {
+    	    return false;
+    	}
+    	if (artifactType == ArtifactType.TEST_IN || artifactType == ArtifactType.TEST_OUT) {
+    	    return new File(checkpointFolderName + "/" + fileName + ".statistics").exists();
+    	}
+    	return true;
     }
     
     /**
@@ -258,9 +271,10 @@ public class Checkpoint {
      * @param runNumber
      * @param iteration
      * @param artifactType
+     * @param context settings of statistics
      * @return
      */
-    public StatisticsWrapper loadTestDataStatistics(int target, int runNumber, int iteration, ArtifactType artifactType) {
+    public StatisticsWrapper loadTestDataStatistics(int target, int runNumber, int iteration, ArtifactType artifactType, StatisticsContext context) {
         String path = checkpointFolderName + "/" + target + "_" + runNumber + "_" + iteration + "_" + artifactType.fileName  + ".statistics";
         
         Properties properties = new Properties();
@@ -269,8 +283,71 @@ public class Checkpoint {
         } catch (IOException e) {
         	throw new CheckpointLoadException("Could not read data from " + path, e);
         }
-        return new StatisticsWrapper(properties);
+        return new StatisticsWrapper(context, properties);
+        
+    }
+
+    /**
+     * Loads the feature vector of a training or test dataset. Returns null if no feature vector has been saved or if
+     * it has been extracted with a different dictionary or different attributes.
+     * 
+     * @param target targets index in the dataset
+     * @param runNumber number of current run
+     * @param iterationNumber current training or test iteration
+     * @param artifactType artifact type
+     * @param featureType feature type
+     * @param fingerprint fingerprint of the model used to extract features
+     * @return
+     */
+    public double[] loadFeatures(int target, int runNumber, int iterationNumber, ArtifactType artifactType, FeatureType featureType, long fingerprint) {
+        
+        // Check
+        String fileName = target + "_" + runNumber + "_" + iterationNumber + "_" + artifactType.fileName + "_" + featureType.name().toLowerCase();
+        if (!useSavedData || !availableFiles.contains(fileName)) {
+            return null;
+        }
+        
+        // Load
+        String path = checkpointFolderName + "/" + fileName + ".features";
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (input.readLong() != fingerprint) {
+                log.warn("Ignoring features extracted with a different dictionary or attributes: " + path);
+                return null;
+            }
+            double[] features = new double[input.readInt()];
+            for (int i = 0; i < features.length; i++) {
+                features[i] = input.readDouble();
+            }
+            return features;
+        } catch (IOException e) {
+            throw new CheckpointLoadException("Could not read data from " + path, e);
+        }
+    }
+
+    /**
+     * Saves the feature vector of a training or test dataset together with the fingerprint of the model used to
+     * extract it.
+     * 
+     * @param target targets index in the dataset
+     * @param runNumber number of current run
+     * @param iterationNumber current training or test iteration
+     * @param artifactType artifact type
+     * @param featureType feature type
+     * @param fingerprint fingerprint of the model used to extract features
+     * @param features feature vector
+     */
+    public void saveFeatures(int target, int runNumber, int iterationNumber, ArtifactType artifactType, FeatureType featureType, long fingerprint, double[] features) {
         
+        String path = checkpointFolderName + "/" + target + "_" + runNumber + "_" + iterationNumber + "_" + artifactType.fileName + "_" + featureType.name().toLowerCase() + ".features";
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            output.writeLong(fingerprint);
+            output.writeInt(features.length);
+            for (double value : features) {
+                output.writeDouble(value);
+            }
+        } catch (IOException e) {
+            log.error("Checkpoint failure. Failed to save features for: " + path, e);
+        }
     }
 
     /**
@@ -296,12 +373,27 @@ public class Checkpoint {
         }
         
         // Save utility estimates
-        if (artifactType == ArtifactType.TEST_IN || artifactType == ArtifactType.TEST_OUT) {
-            try (FileOutputStream fileOutputStream = new FileOutputStream(pathToCurrentFile + ".statistics")){
-            	statistics.toProperties().store(fileOutputStream, null);
-            } catch (IOException e) {
-            	log.error("Checkpoint failure. Failed to save statistics for: " + pathToCurrentFile, e);
-            }
+        if ((artifactType == ArtifactType.TEST_IN || artifactType == ArtifactType.TEST_OUT) && statistics != null) {
+            saveStatistics(target, runNumber, iterationNumber, statistics, artifactType);
+        }
+    }
+    
+    /**
+     * Saves the utility estimates of anonymized test data in the checkpoint folder.
+     * 
+     * @param target targets index in the dataset
+     * @param runNumber number of current run
+     * @param iterationNumber current test iteration
+     * @param statistics
+     * @param artifactType artifact type
+     */
+    public void saveStatistics(int target, int runNumber, int iterationNumber, StatisticsWrapper statistics, ArtifactType artifactType) {
+        
+        String pathToCurrentFile = checkpointFolderName + "/" + target + "_" + runNumber + "_" + iterationNumber  + "_" + artifactType.fileName;
+        try (FileOutputStream fileOutputStream = new FileOutputStream(pathToCurrentFile + ".statistics")){
+            statistics.toProperties().store(fileOutputStream, null);
+        } catch (IOException e) {
+            log.error("Checkpoint failure. Failed to save statistics for: " + pathToCurrentFile, e);
         }
     }
     
@@ -464,7 +556,8 @@ public class Checkpoint {
             || Double.compare(riskAssessmentConfig.getOverlap(), savedRiskAssessmentConfiguration.getOverlap()) != 0
             || riskAssessmentConfig.getSizeSampleTraining() != savedRiskAssessmentConfiguration.getSizeSampleTraining()
             || riskAssessmentConfig.getSizeSampleTest() != savedRiskAssessmentConfiguration.getSizeSampleTest()
-            || riskAssessmentConfig.getTargetType() != savedRiskAssessmentConfiguration.getTargetType()) {
+            || riskAssessmentConfig.getTargetType() != savedRiskAssessmentConfiguration.getTargetType()
+            || riskAssessmentConfig.getTargetNeighbors() != savedRiskAssessmentConfiguration.getTargetNeighbors()) {
             
         	throw new IncompatibleConfigurationException("Current risk assessment config (" + riskAssessmentConfig.getName() + ") not compatible with saved config " + savedRiskAssessmentConfiguration.getName() +")");
         }
@@ -23,5 +23,7 @@ public enum ClassifierType {
     /** Logistic regression*/
     LR,
     /** Random forest*/
-    RF
+    RF,
+    /** Logistic regression trained incrementally as samples arrive */
+    ONLINE_LR
 }
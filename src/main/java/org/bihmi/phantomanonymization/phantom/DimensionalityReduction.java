@@ -0,0 +1,29 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+/**
+ * Dimensionality reduction applied to feature vectors before training classifiers
+ */
+public enum DimensionalityReduction {
+    /** Use feature vectors as they are */
+    NONE,
+    /** Hash features into a fixed number of buckets with random signs */
+    HASHING,
+    /** Keep the features with the largest total magnitude in the training data */
+    TOP_K,
+    /** Sparse random projection */
+    RANDOM_PROJECTION
+}
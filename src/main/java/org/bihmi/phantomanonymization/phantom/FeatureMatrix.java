@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+import java.util.Arrays;
+
+/**
+ * Append-only matrix of feature vectors with labels, stored row by row in a single array. Rows keep the order in
+ * which they have been added. A fingerprint of the content is maintained while rows are added, so that identical
+ * sequences of feature vectors and labels can be recognized without comparing them.
+ * Instances are not thread-safe.
+ */
+class FeatureMatrix {
+
+    /** FNV-1a offset basis */
+    private static final long OFFSET = 0xcbf29ce484222325L;
+    /** FNV-1a prime */
+    private static final long PRIME  = 0x100000001b3L;
+
+    /** Values, row by row */
+    private double[] values;
+    /** Labels */
+    private int[]    labels;
+    /** Number of rows */
+    private int      rows        = 0;
+    /** Number of columns, -1 if no rows have been added */
+    private int      columns     = -1;
+    /** Expected number of rows */
+    private final int capacity;
+    /** Fingerprint of the content */
+    private long     fingerprint = OFFSET;
+
+    /**
+     * Creates a new instance
+     * @param capacity expected number of rows
+     */
+    FeatureMatrix(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.values = new double[0];
+        this.labels = new int[this.capacity];
+    }
+
+    /**
+     * Appends a row
+     * @param row feature vector
+     * @param label label of the row
+     */
+    void add(double[] row, int label) {
+
+        // Check
+        if (columns == -1) {
+            columns = row.length;
+            values = new double[capacity * columns];
+        } else if (row.length != columns) {
+            throw new IllegalArgumentException("Inconsistent feature size: " + columns + " and " + row.length);
+        }
+
+        // Grow
+        if (rows == labels.length) {
+            labels = Arrays.copyOf(labels, rows * 2);
+            values = Arrays.copyOf(values, labels.length * columns);
+        }
+
+        // Store
+        System.arraycopy(row, 0, values, rows * columns, columns);
+        labels[rows] = label;
+        rows++;
+
+        // Update fingerprint
+        for (double value : row) {
+            fingerprint = mix(fingerprint, Double.doubleToLongBits(value));
+        }
+        fingerprint = mix(fingerprint, label);
+    }
+
+    /**
+     * Returns the number of rows
+     */
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns, -1 if no rows have been added
+     */
+    int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns a copy of the given row
+     * @param row
+     * @return
+     */
+    double[] getRow(int row) {
+        return Arrays.copyOfRange(values, row * columns, (row + 1) * columns);
+    }
+
+    /**
+     * Returns the labels of all rows
+     */
+    int[] getLabels() {
+        return Arrays.copyOf(labels, rows);
+    }
+
+    /**
+     * Returns copies of all rows
+     */
+    double[][] toArray() {
+        double[][] result = new double[rows][];
+        for (int row = 0; row < rows; row++) {
+            result[row] = getRow(row);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a fingerprint of the number of columns, the values and the labels of all rows in their order
+     */
+    long getFingerprint() {
+        return mix(fingerprint, columns);
+    }
+
+    /**
+     * Mixes the bytes of the given value into the hash
+     * @param hash
+     * @param value
+     * @return
+     */
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+}
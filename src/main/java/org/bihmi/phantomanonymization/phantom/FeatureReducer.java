@@ -0,0 +1,247 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the dimension of feature vectors. The reduction is determined once from the training data and then applied
+ * to training and test vectors alike. Hashing and random projection are derived from fixed seeds, so that the same
+ * input dimension is always mapped in the same way.
+ */
+class FeatureReducer {
+
+    /** Seed for hashing and random projection */
+    private static final long SEED = 0x5DEECE66DL;
+
+    /**
+     * Creates a reducer for the given training data
+     * @param type type of reduction
+     * @param dimension target dimension
+     * @param xTrain training data
+     * @return
+     */
+    static FeatureReducer create(DimensionalityReduction type, int dimension, double[][] xTrain) {
+        int inputDimension = xTrain.length == 0 ? 0 : xTrain[0].length;
+        if (type == null || type == DimensionalityReduction.NONE || dimension <= 0 || dimension >= inputDimension) {
+            return new FeatureReducer(DimensionalityReduction.NONE, inputDimension, inputDimension, null);
+        }
+        int[] selected = null;
+        if (type == DimensionalityReduction.TOP_K) {
+            selected = getLargestFeatures(xTrain, dimension);
+        }
+        return new FeatureReducer(type, inputDimension, dimension, selected);
+    }
+
+    /**
+     * Returns the indices of the features with the largest total magnitude, in ascending order.
+     * Ties are resolved in favor of lower indices.
+     * @param xTrain
+     * @param dimension
+     * @return
+     */
+    private static int[] getLargestFeatures(double[][] xTrain, int dimension) {
+
+        // Calculate magnitudes
+        int inputDimension = xTrain[0].length;
+        double[] magnitudes = new double[inputDimension];
+        for (double[] x : xTrain) {
+            for (int i = 0; i < inputDimension; i++) {
+                magnitudes[i] += Math.abs(x[i]);
+            }
+        }
+
+        // Select with a heap whose root is the least relevant of the features selected so far
+        int[] heap = new int[dimension];
+        for (int i = 0; i < inputDimension; i++) {
+            if (i < dimension) {
+                heap[i] = i;
+                siftUp(heap, i, magnitudes);
+            } else if (isSelectedBefore(i, heap[0], magnitudes)) {
+                heap[0] = i;
+                siftDown(heap, magnitudes);
+            }
+        }
+
+        // Done
+        Arrays.sort(heap);
+        return heap;
+    }
+
+    /**
+     * Returns whether the first feature is selected before the second one
+     * @param first
+     * @param second
+     * @param magnitudes
+     * @return
+     */
+    private static boolean isSelectedBefore(int first, int second, double[] magnitudes) {
+        int result = Double.compare(magnitudes[first], magnitudes[second]);
+        return result != 0 ? result > 0 : first < second;
+    }
+
+    /**
+     * Moves the feature at the given position up, until its parent is selected before it
+     * @param heap
+     * @param position
+     * @param magnitudes
+     */
+    private static void siftUp(int[] heap, int position, double[] magnitudes) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!isSelectedBefore(heap[parent], heap[position], magnitudes)) {
+                return;
+            }
+            swap(heap, parent, position);
+            position = parent;
+        }
+    }
+
+    /**
+     * Moves the feature at the root down, until it is selected before its children
+     * @param heap
+     * @param magnitudes
+     */
+    private static void siftDown(int[] heap, double[] magnitudes) {
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heap.length) {
+                return;
+            }
+            if (child + 1 < heap.length && isSelectedBefore(heap[child], heap[child + 1], magnitudes)) {
+                child++;
+            }
+            if (!isSelectedBefore(heap[position], heap[child], magnitudes)) {
+                return;
+            }
+            swap(heap, position, child);
+            position = child;
+        }
+    }
+
+    /**
+     * Swaps two entries
+     * @param array
+     * @param first
+     * @param second
+     */
+    private static void swap(int[] array, int first, int second) {
+        int temp = array[first];
+        array[first] = array[second];
+        array[second] = temp;
+    }
+
+    /**
+     * Mixes the given values into a hash
+     * @param a
+     * @param b
+     * @return
+     */
+    private static long hash(long a, long b) {
+        long hash = (a * 0x9E3779B97F4A7C15L) ^ (b + SEED);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /** Type */
+    private final DimensionalityReduction type;
+    /** Input dimension */
+    private final int                     inputDimension;
+    /** Output dimension */
+    private final int                     outputDimension;
+    /** Selected features for top-k selection */
+    private final int[]                   selected;
+
+    /**
+     * Creates a new instance
+     * @param type
+     * @param inputDimension
+     * @param outputDimension
+     * @param selected
+     */
+    private FeatureReducer(DimensionalityReduction type, int inputDimension, int outputDimension, int[] selected) {
+        this.type = type;
+        this.inputDimension = inputDimension;
+        this.outputDimension = outputDimension;
+        this.selected = selected;
+    }
+
+    /**
+     * Returns the dimension of reduced vectors
+     */
+    int getOutputDimension() {
+        return outputDimension;
+    }
+
+    /**
+     * Reduces the given vector
+     * @param x
+     * @return
+     */
+    double[] apply(double[] x) {
+
+        // Check
+        if (x.length != inputDimension) {
+            throw new IllegalArgumentException("Inconsistent feature size: " + inputDimension + " and " + x.length);
+        }
+
+        // Reduce
+        double[] result;
+        switch (type) {
+        case NONE:
+            return x;
+        case TOP_K:
+            result = new double[outputDimension];
+            for (int i = 0; i < selected.length; i++) {
+                result[i] = x[selected[i]];
+            }
+            return result;
+        case HASHING:
+            result = new double[outputDimension];
+            for (int i = 0; i < inputDimension; i++) {
+                if (x[i] != 0d) {
+                    long hash = hash(i, 0);
+                    int bucket = (int) Math.floorMod(hash >>> 1, (long) outputDimension);
+                    result[bucket] += (hash & 1L) == 0 ? x[i] : -x[i];
+                }
+            }
+            return result;
+        case RANDOM_PROJECTION:
+            // Sparse projection with entries sqrt(3) * {+1, 0, -1} at probabilities {1/6, 2/3, 1/6}
+            result = new double[outputDimension];
+            double scale = Math.sqrt(3d / outputDimension);
+            for (int i = 0; i < inputDimension; i++) {
+                if (x[i] != 0d) {
+                    for (int j = 0; j < outputDimension; j++) {
+                        long bucket = Math.floorMod(hash(i, j), 6L);
+                        if (bucket == 0) {
+                            result[j] += scale * x[i];
+                        } else if (bucket == 1) {
+                            result[j] -= scale * x[i];
+                        }
+                    }
+                }
+            }
+            return result;
+        default:
+            throw new IllegalStateException("Unknown dimensionality reduction: " + type);
+        }
+    }
+}
@@ -16,6 +16,8 @@ package org.bihmi.phantomanonymization.phantom;
 
 import org.apache.commons.math3.util.Pair;
 import org.bihmi.anonymization.config.AttributeConfig;
+import org.bihmi.phantomanonymization.config.ClassifierConfig;
+import org.bihmi.phantomanonymization.config.RiskAssessmentConfig;
 import org.bihmi.phantomanonymization.features.*;
 import org.deidentifier.arx.DataHandle;
 import org.deidentifier.arx.DataType;
@@ -25,18 +27,77 @@ import smile.classification.LogisticRegression;
 import smile.classification.RandomForest;
 import smile.classification.SoftClassifier;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
 
 /**
  * Membership prediction
  */
 public class MembershipPredictionModel {
 
+    /**
+     * Random forest consisting of several forests trained independently. Posteriors are averaged, weighted by the
+     * number of trees in each forest.
+     */
+    private static class Forests implements SoftClassifier<double[]> {
+
+        /** Forests */
+        private final RandomForest[] forests;
+        /** Number of trees per forest */
+        private final int[]          trees;
+
+        /**
+         * Creates a new instance
+         * @param forests
+         * @param trees
+         */
+        Forests(RandomForest[] forests, int[] trees) {
+            this.forests = forests;
+            this.trees = trees;
+        }
+
+        @Override
+        public int predict(double[] x) {
+            return predict(x, new double[]{0, 0});
+        }
+
+        @Override
+        public int predict(double[] x, double[] posteriori) {
+            
+            // Average posteriors
+            int total = 0;
+            double[] _posteriori = new double[posteriori.length];
+            Arrays.fill(posteriori, 0d);
+            for (int i = 0; i < forests.length; i++) {
+                Arrays.fill(_posteriori, 0d);
+                forests[i].predict(x, _posteriori);
+                for (int j = 0; j < posteriori.length; j++) {
+                    posteriori[j] += trees[i] * _posteriori[j];
+                }
+                total += trees[i];
+            }
+            
+            // Determine label
+            int label = 0;
+            for (int j = 0; j < posteriori.length; j++) {
+                posteriori[j] /= total;
+                if (posteriori[j] > posteriori[label]) {
+                    label = j;
+                }
+            }
+            return label;
+        }
+    }
+
     /** Number of bins to use for histogram feature */
     private final static int NUM_BINS = 10;
     
@@ -55,11 +116,53 @@ public class MembershipPredictionModel {
     /** Attribute Config for whole dataset */
     private final List<AttributeConfig> attributeConfigs;
     
-    /** Training data */
-    private final Map<Feature, Boolean> trainingData = new HashMap<>();
+    /** Risk assessment config */
+    private final RiskAssessmentConfig riskAssessmentConfig;
+    
+    /** Training data, compiled features and labels in the order in which they have been added */
+    private final FeatureMatrix training;
+    
+    /** Number of training samples */
+    private int trainingCount = 0;
+    
+    /** Test data, compiled features in the order in which they have been added */
+    private final FeatureMatrix testing;
+    
+    /** Number of test samples */
+    private int testCount = 0;
+    
+    /** Size of feature vectors, -1 if no features have been added */
+    private int featureSize = -1;
+    
+    /** Reduces the dimension of feature vectors, determined when compiling */
+    private FeatureReducer reducer;
     
-    /** Test data */
-    private final List<Feature> testData = new ArrayList<>();
+    /** Training data after dimensionality reduction, determined when compiling */
+    private double[][] xTrainReduced;
+    
+    /** Training data labels, determined when compiling */
+    private int[] yTrainReduced;
+    
+    /** Time required to train the classifier in milliseconds */
+    private long trainingTime = 0L;
+    
+    /** Executor used to train classifiers in parallel, null if training is sequential */
+    private ExecutorService trainingExecutor;
+    
+    /** Number of threads which may currently be used for training */
+    private IntSupplier trainingParallelism;
+    
+    /** Whether the classifier is trained incrementally, in which case features are not stored */
+    private final boolean online;
+    
+    /** Incrementally trained classifier, created with the first training sample */
+    private OnlineLogisticRegression onlineClassifier;
+    
+    /** Predictions of test samples when training incrementally */
+    private Pair<Boolean, Double>[] onlinePredictions;
+    
+    /** Cache of trained classifiers, null if classifiers are not cached */
+    private ModelCache modelCache;
 
     /**
      * Creates a new instance
@@ -67,8 +170,38 @@ public class MembershipPredictionModel {
      * @param dictionary
      */
     public MembershipPredictionModel(List<AttributeConfig> attributeConfigs, Dictionary dictionary) {
+        this(attributeConfigs, dictionary, new RiskAssessmentConfig(), 0, 0);
+    }
+
+    /**
+     * Creates a new instance with storage for the expected number of samples
+     * @param attributeConfigs
+     * @param dictionary
+     * @param riskAssessmentConfig configuration of features
+     * @param trainingCapacity expected number of training samples
+     * @param testCapacity expected number of test samples
+     */
+    public MembershipPredictionModel(List<AttributeConfig> attributeConfigs, Dictionary dictionary, RiskAssessmentConfig riskAssessmentConfig, int trainingCapacity, int testCapacity) {
         this.dictionary = dictionary;
         this.attributeConfigs = attributeConfigs;
+        this.riskAssessmentConfig = riskAssessmentConfig;
+        this.online = riskAssessmentConfig.getClassifierType() == ClassifierType.ONLINE_LR;
+        if (online) {
+            if (riskAssessmentConfig.getDimensionalityReduction() == DimensionalityReduction.TOP_K) {
+                throw new IllegalArgumentException("Dimensionality reduction " + DimensionalityReduction.TOP_K + " is not supported by incremental training");
+            }
+            if (!riskAssessmentConfig.getClassifierGrid().isEmpty()) {
+                throw new IllegalArgumentException("A classifier grid is not supported by incremental training, as feature vectors are not kept");
+            }
+            @SuppressWarnings("unchecked")
+            Pair<Boolean, Double>[] predictions = new Pair[testCapacity];
+            this.onlinePredictions = predictions;
+            this.training = null;
+            this.testing = null;
+        } else {
+            this.training = new FeatureMatrix(trainingCapacity);
+            this.testing = new FeatureMatrix(testCapacity);
+        }
     }
 
     /**
@@ -77,68 +210,125 @@ public class MembershipPredictionModel {
     public Pair<Boolean, Double>[] predict(FeatureType featureType, ClassifierType classifierType, Set<String> attributesToConsider) {
         
         // Check
-        if (this.trainingData.isEmpty()) {
+        if (trainingCount == 0) {
             throw new IllegalStateException("No training data has been provided");
         }
         
         // Check
-        if (this.testData.isEmpty()) {
+        if (testCount == 0) {
             throw new IllegalStateException("No test data has been provided");
         }
 
+        // Predictions have already been performed when testing
+        if (online) {
+            return Arrays.copyOf(onlinePredictions, testCount);
+        }
+
         // Actually train the classifier
         if (!compiled) {
             compile(classifierType);
         }
 
-        double[][] xValues = new double[testData.size()][];
-        for (int i = 0; i < testData.size(); i++) {
-            xValues[i] = testData.get(i).compile();
-        }
-
-        // Prepare
-        @SuppressWarnings("unchecked")
-        Pair<Boolean, Double>[] result = new Pair[testData.size()];
-        for (int i = 0; i < testData.size(); i++) {
-
-            // Predict label
-            double[] probabilities = new double[]{0, 0};
-            int target = classifier.predict(xValues[i], probabilities);
-
-            double confidence = probabilities[target];
-            result[i] = new Pair<>(target == 1, confidence);
-        }
-        // Done
-        return result;
+        // Predict and done
+        return predict(classifier);
     }
 
     /**
      * Train the the classifier
      */
     public void train(DataHandle data, boolean targetIncluded, FeatureType featureType, Set<String> attributesToConsider) {
+        train(extract(data, featureType, attributesToConsider), targetIncluded);
+    }
+
+    /**
+     * Train the classifier with features which have already been extracted
+     */
+    public void train(double[] features, boolean targetIncluded) {
         
         // Check
-        if (compiled) {
+        if (compiled || (online && testCount > 0)) {
             throw new IllegalStateException("Classifier already compiled to perform predictions");
         }
 
+        // Update incrementally trained classifier
+        checkFeatureSize(features);
+        if (online) {
+            long start = System.currentTimeMillis();
+            if (onlineClassifier == null) {
+                reducer = FeatureReducer.create(riskAssessmentConfig.getDimensionalityReduction(), riskAssessmentConfig.getReducedDimension(), new double[][] {features});
+                onlineClassifier = new OnlineLogisticRegression(reducer.getOutputDimension(), riskAssessmentConfig.getClassifierConfig().getOnlineLearningRate());
+            }
+            onlineClassifier.update(reducer.apply(features), targetIncluded ? 1 : 0);
+            trainingTime += System.currentTimeMillis() - start;
+            trainingCount++;
+            return;
+        }
+
         // Store training data
-        Feature features = getFeatures(data, featureType, attributesToConsider);
-        trainingData.put(features, targetIncluded);
+        training.add(features, targetIncluded ? 1 : 0);
+        trainingCount++;
     }
     
     /**
      * Add test samples to classifier
      */
     public void test(DataHandle data, FeatureType featureType, Set<String> attributesToConsider) {
+        test(extract(data, featureType, attributesToConsider));
+    }
+
+    /**
+     * Add test samples with features which have already been extracted to classifier
+     */
+    public void test(double[] features) {
 	    // Check
 	    if (compiled) {
 	        throw new IllegalStateException("Classifier already compiled to perform predictions");
 	    }
 	
+	    // Predict immediately when training incrementally, training is finished with the first test sample
+	    checkFeatureSize(features);
+	    if (online) {
+	        if (testCount == onlinePredictions.length) {
+	            onlinePredictions = Arrays.copyOf(onlinePredictions, Math.max(1, testCount * 2));
+	        }
+	        // Without training data, the sample is only counted and predict() reports the missing training data
+	        if (trainingCount == 0) {
+	            onlinePredictions[testCount++] = null;
+	            return;
+	        }
+	        double[] probabilities = new double[]{0, 0};
+	        int target = onlineClassifier.predict(reducer.apply(features), probabilities);
+	        onlinePredictions[testCount++] = new Pair<>(target == 1, probabilities[target]);
+	        return;
+	    }
+
 	    // Store test data
-	    Feature features = getFeatures(data, featureType, attributesToConsider);
-	    testData.add(features);
+	    testing.add(features, 0);
+	    testCount++;
+    }
+
+    /**
+     * Extracts and compiles the features of the given data
+     */
+    public double[] extract(DataHandle data, FeatureType featureType, Set<String> attributesToConsider) {
+        return getFeatures(data, featureType, attributesToConsider).compile();
+    }
+
+    /**
+     * Returns a fingerprint of everything feature vectors depend on besides the data and the feature type, i.e. the
+     * dictionary, the attributes to consider and the parameters of features
+     */
+    public long getFingerprint(Set<String> attributesToConsider) {
+        String[] attributes = attributesToConsider.toArray(new String[0]);
+        Arrays.sort(attributes);
+        long fingerprint = dictionary.getFingerprint() * 31 + NUM_BINS;
+        fingerprint = fingerprint * 31 + riskAssessmentConfig.getMarginalsOrder();
+        fingerprint = fingerprint * 31 + riskAssessmentConfig.getMarginalsMaxDimension();
+        fingerprint = fingerprint * 31 + (riskAssessmentConfig.isEnsembleWithMarginals() ? 1 : 0);
+        for (String attribute : attributes) {
+            fingerprint = fingerprint * 31 + attribute.hashCode();
+        }
+        return fingerprint;
     }
     
     /**
@@ -147,54 +337,256 @@ public class MembershipPredictionModel {
     private void compile(ClassifierType classifierType) {
 
         // Prepare
-        double[][] xTrain = new double[trainingData.size()][];
-        int[] yTrain = new int[trainingData.size()];
-
-        // Collect data
-        int index = 0;
-        int featureSize = Integer.MIN_VALUE;
-        for (Entry<Feature, Boolean> data : trainingData.entrySet()) {
-
-            // Store
-            xTrain[index] = data.getKey().compile();
-            yTrain[index] = data.getValue() ? 1 : 0;
-
-            // Sanity checks
-            if (featureSize == Integer.MIN_VALUE) {
-                featureSize = xTrain[index].length;
-            } else if (featureSize != xTrain[index].length) {
-                throw new IllegalArgumentException("Inconsistent feature size: " + featureSize + " and " + xTrain[index].length);
-            }
+        double[][] xTrain = training.toArray();
+        int[] yTrain = training.getLabels();
+        long start = System.currentTimeMillis();
 
-            // Next
-            index++;
+        // Reduce dimensionality
+        reducer = FeatureReducer.create(riskAssessmentConfig.getDimensionalityReduction(), riskAssessmentConfig.getReducedDimension(), xTrain);
+        if (reducer.getOutputDimension() != featureSize) {
+            double[][] reduced = new double[xTrain.length][];
+            for (int i = 0; i < xTrain.length; i++) {
+                reduced[i] = reducer.apply(xTrain[i]);
+            }
+            xTrain = reduced;
         }
 
         // Train
+        classifier = getClassifier(classifierType, riskAssessmentConfig.getClassifierConfig(), xTrain, yTrain, true);
+        
+        this.xTrainReduced = xTrain;
+        this.yTrainReduced = yTrain;
+        this.trainingTime = System.currentTimeMillis() - start;
+        this.compiled = true;
+    }
+
+    /**
+     * Predicts for all datasets whether the target is included with each of the given classifier configurations. The
+     * classifiers are trained on the training data used for the last call to predict, and are trained in parallel if
+     * a training executor has been set.
+     * @param grid classifier configurations
+     * @param classifierType classifier type used for configurations which do not specify one
+     * @return predictions, indexed by configuration and test sample
+     */
+    public Pair<Boolean, Double>[][] predict(List<ClassifierConfig> grid, ClassifierType classifierType) {
+        
+        // Check
+        if (grid.isEmpty()) {
+            @SuppressWarnings("unchecked")
+            Pair<Boolean, Double>[][] result = new Pair[0][];
+            return result;
+        }
+        if (online) {
+            throw new IllegalStateException("Further configurations can not be evaluated when training incrementally");
+        }
+        if (!compiled) {
+            throw new IllegalStateException("Classifier must be compiled before evaluating further configurations");
+        }
+        
+        // Prepare
+        @SuppressWarnings("unchecked")
+        Pair<Boolean, Double>[][] result = new Pair[grid.size()][];
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < grid.size()) {
+                ClassifierConfig config = grid.get(index);
+                ClassifierType type = config.getClassifierType() != null ? config.getClassifierType() : classifierType;
+                
+                // Configurations are already trained in parallel
+                SoftClassifier<double[]> classifier = getClassifier(type, config, xTrainReduced, yTrainReduced, false);
+                result[index] = predict(classifier);
+            }
+        };
+        
+        // Train configurations on as many threads as available
+        int parallelism = trainingExecutor != null ? Math.min(trainingParallelism.getAsInt(), grid.size()) : 1;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < parallelism; i++) {
+            futures.add(trainingExecutor.submit(worker));
+        }
+        worker.run();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        
+        // Done
+        return result;
+    }
+
+    /**
+     * Predicts all test samples with the given classifier
+     */
+    private Pair<Boolean, Double>[] predict(SoftClassifier<double[]> classifier) {
+        @SuppressWarnings("unchecked")
+        Pair<Boolean, Double>[] result = new Pair[testCount];
+        for (int i = 0; i < testCount; i++) {
+            double[] probabilities = new double[]{0, 0};
+            int target = classifier.predict(reducer.apply(testing.getRow(i)), probabilities);
+            result[i] = new Pair<>(target == 1, probabilities[target]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a classifier with the given hyperparameters from the cache or trains it
+     * @param parallel whether random forests may be trained in parallel
+     */
+    private SoftClassifier<double[]> getClassifier(ClassifierType classifierType, ClassifierConfig config, double[][] xTrain, int[] yTrain, boolean parallel) {
+        
+        // Train without cache
+        if (modelCache == null) {
+            return train(classifierType, config, xTrain, yTrain, parallel);
+        }
+        
+        // Lookup and train if necessary
+        String key = getTrainingFingerprint() + ";" + trainingCount + ";" + classifierType + ";" + config + ";" +
+                     riskAssessmentConfig.getDimensionalityReduction() + ";" + riskAssessmentConfig.getReducedDimension();
+        SoftClassifier<double[]> result = modelCache.get(key);
+        if (result == null) {
+            result = train(classifierType, config, xTrain, yTrain, parallel);
+            modelCache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Trains a classifier with the given hyperparameters
+     * @param parallel whether random forests may be trained in parallel
+     */
+    private SoftClassifier<double[]> train(ClassifierType classifierType, ClassifierConfig config, double[][] xTrain, int[] yTrain, boolean parallel) {
         switch (classifierType) {
             case KNN:
-                // TODO relocated to main and to configuration eventually
-                int numberOfNeighbors = 5; // 5 is used by Stadler et al.
-                classifier = KNN.learn(xTrain, yTrain, numberOfNeighbors, null);
-                break;
+                return KNN.learn(xTrain, yTrain, config.getKnnNeighbors(), null);
             case LR:
-                classifier = new LogisticRegression(xTrain, yTrain, null);
-                break;
+                return new LogisticRegression(xTrain, yTrain, null);
             case RF:
-                // TODO relocated to main and to configuration eventually
-                int numberOfTrees = 100; // sklearn default := 100 | ARX default := 500
-                int maxNumberOfLeafNodes = Integer.MAX_VALUE; // sklean default := +INF | ARX default = 100;
-                int minSizeOfLeafNodes = 1; // sklean default := 1 | ARX default := 5
-                int numberOfVariablesToSplit = (int) Math.floor(Math.sqrt(xTrain[0].length)); // sklearn := auto (i.e. sqrt(#features)) | ARX default := 0
-                double subSample = 1d; // skleanr --> provided at total number (2) | ARX default := 1d
-                SplitRule splitRule = SplitRule.GINI; // sklearn default := GINI | ARX dedault: = GINI
-                classifier = new RandomForest(null, xTrain, yTrain, numberOfTrees, maxNumberOfLeafNodes, minSizeOfLeafNodes, numberOfVariablesToSplit, subSample, splitRule, null);
-                break;
+                int numberOfVariablesToSplit = config.getRfMtry() > 0 ? config.getRfMtry() : (int) Math.floor(Math.sqrt(xTrain[0].length)); // sklearn := auto (i.e. sqrt(#features)) | ARX default := 0
+                int parallelism = parallel && trainingExecutor != null && config.isRfParallelTraining() ? Math.min(trainingParallelism.getAsInt(), config.getRfTrees()) : 1;
+                if (parallelism <= 1) {
+                    return getRandomForest(config, numberOfVariablesToSplit, config.getRfTrees(), xTrain, yTrain);
+                }
+                return getParallelRandomForest(config, numberOfVariablesToSplit, parallelism, xTrain, yTrain);
+            case ONLINE_LR:
+                OnlineLogisticRegression regression = new OnlineLogisticRegression(xTrain[0].length, config.getOnlineLearningRate());
+                for (int i = 0; i < xTrain.length; i++) {
+                    regression.update(xTrain[i], yTrain[i]);
+                }
+                return regression;
             default:
                 throw new RuntimeException("Classifier not supported");
         }
+    }
+
+    /**
+     * Trains a single random forest
+     */
+    private RandomForest getRandomForest(ClassifierConfig config, int numberOfVariablesToSplit, int numberOfTrees, double[][] xTrain, int[] yTrain) {
+        SplitRule splitRule = SplitRule.GINI; // sklearn default := GINI | ARX dedault: = GINI
+        return new RandomForest(null, xTrain, yTrain, numberOfTrees, config.getRfMaxNodes(), config.getRfNodeSize(), numberOfVariablesToSplit, config.getRfSubsample(), splitRule, null);
+    }
+
+    /**
+     * Trains a random forest as several smaller forests in parallel. One forest is trained on the current thread,
+     * the others on the training executor.
+     */
+    private SoftClassifier<double[]> getParallelRandomForest(ClassifierConfig config, int numberOfVariablesToSplit, int parallelism, double[][] xTrain, int[] yTrain) {
         
-        this.compiled = true;
+        // Distribute trees
+        int[] trees = new int[parallelism];
+        for (int i = 0; i < config.getRfTrees(); i++) {
+            trees[i % parallelism]++;
+        }
+        
+        // Submit
+        List<Future<RandomForest>> futures = new ArrayList<>();
+        for (int i = 1; i < parallelism; i++) {
+            final int numberOfTrees = trees[i];
+            futures.add(trainingExecutor.submit(() -> getRandomForest(config, numberOfVariablesToSplit, numberOfTrees, xTrain, yTrain)));
+        }
+        
+        // Train and collect
+        RandomForest[] forests = new RandomForest[parallelism];
+        forests[0] = getRandomForest(config, numberOfVariablesToSplit, trees[0], xTrain, yTrain);
+        for (int i = 1; i < parallelism; i++) {
+            try {
+                forests[i] = futures.get(i - 1).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return new Forests(forests, trees);
+    }
+
+    /**
+     * Sets an executor used to train classifiers in parallel
+     * @param executor executor
+     * @param parallelism supplies the number of threads which may currently be used for training
+     */
+    public void setTrainingExecutor(ExecutorService executor, IntSupplier parallelism) {
+        this.trainingExecutor = executor;
+        this.trainingParallelism = parallelism;
+    }
+
+    /**
+     * Sets a cache used to reuse classifiers trained on identical training data with identical settings
+     * @param modelCache
+     */
+    public void setModelCache(ModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
+    /**
+     * Returns a fingerprint of the training data, i.e. of all feature vectors and labels in the order in which they
+     * have been added
+     */
+    public long getTrainingFingerprint() {
+        if (online) {
+            throw new IllegalStateException("Training data is not stored when training incrementally");
+        }
+        return training.getFingerprint();
+    }
+
+    /**
+     * Returns the time required to train the classifier in milliseconds, including dimensionality reduction
+     */
+    public long getTrainingTime() {
+        return trainingTime;
+    }
+
+    /**
+     * Returns the size of feature vectors, -1 if no features have been added
+     */
+    public int getFeatureDimension() {
+        return featureSize;
+    }
+
+    /**
+     * Returns the size of feature vectors after dimensionality reduction, -1 if the classifier has not been trained
+     */
+    public int getReducedDimension() {
+        return reducer != null ? reducer.getOutputDimension() : -1;
+    }
+
+    /**
+     * Sanity check to ensure that all feature vectors have the same size
+     */
+    private void checkFeatureSize(double[] features) {
+        if (featureSize == -1) {
+            featureSize = features.length;
+        } else if (featureSize != features.length) {
+            throw new IllegalArgumentException("Inconsistent feature size: " + featureSize + " and " + features.length);
+        }
     }
 
     /**
@@ -203,13 +595,18 @@ public class MembershipPredictionModel {
     private Feature getFeatures(DataHandle handle, FeatureType featureType, Set<String> attributesToConsider) {
         switch (featureType) {
             case ENSEMBLE:
-                return new FeatureEnsemble(handle, attributesToConsider, attributeConfigs, dictionary, dataTypes, NUM_BINS);
+                return new FeatureEnsemble(handle, attributesToConsider, attributeConfigs, dictionary, dataTypes, NUM_BINS,
+                                           riskAssessmentConfig.isEnsembleWithMarginals() ? riskAssessmentConfig.getMarginalsOrder() : 0,
+                                           riskAssessmentConfig.getMarginalsMaxDimension());
             case CORRELATION:
                 return new FeatureCorrelation(handle, attributesToConsider, attributeConfigs, dictionary);
             case HISTOGRAM:
                 return new FeatureHistogram(handle, attributesToConsider, attributeConfigs, dictionary, dataTypes, NUM_BINS);
             case NAIVE:
                 return new FeatureNaive(handle, attributesToConsider, attributeConfigs, dictionary, dataTypes);
+            case MARGINALS:
+                return new FeatureMarginals(handle, attributesToConsider, attributeConfigs, dictionary, dataTypes, NUM_BINS,
+                                            riskAssessmentConfig.getMarginalsOrder(), riskAssessmentConfig.getMarginalsMaxDimension());
             default:
                 throw new IllegalArgumentException("Unknown feature!");
         }
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import smile.classification.SoftClassifier;
+
+/**
+ * Cache of trained classifiers, keyed by the fingerprint of their training data and their settings. The least
+ * recently used classifier is evicted when the capacity is exceeded. Instances are thread-safe.
+ */
+public class ModelCache {
+
+    /** Classifiers */
+    private final Map<String, SoftClassifier<double[]>> classifiers;
+    /** Number of lookups which returned a classifier */
+    private int                                         hits   = 0;
+    /** Number of lookups which did not return a classifier */
+    private int                                         misses = 0;
+
+    /**
+     * Creates a new instance
+     * @param capacity maximal number of classifiers
+     */
+    public ModelCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.classifiers = new LinkedHashMap<String, SoftClassifier<double[]>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SoftClassifier<double[]>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the classifier stored for the key, null if there is none
+     * @param key
+     * @return
+     */
+    synchronized SoftClassifier<double[]> get(String key) {
+        SoftClassifier<double[]> classifier = classifiers.get(key);
+        if (classifier != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return classifier;
+    }
+
+    /**
+     * Stores a classifier
+     * @param key
+     * @param classifier
+     */
+    synchronized void put(String key, SoftClassifier<double[]> classifier) {
+        classifiers.put(key, classifier);
+    }
+
+    /**
+     * Returns the number of lookups which returned a classifier
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups which did not return a classifier
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+import smile.classification.SoftClassifier;
+
+/**
+ * Binary logistic regression which is trained incrementally, one sample at a time, with AdaGrad. Features are
+ * standardized with running estimates of their means and standard deviations, which are updated before each step.
+ * Instances are not thread-safe.
+ */
+class OnlineLogisticRegression implements SoftClassifier<double[]> {
+
+    /** Constant to avoid division by zero */
+    private static final double EPSILON = 1e-8d;
+
+    /** Learning rate */
+    private final double   learningRate;
+    /** Weights */
+    private final double[] weights;
+    /** Sums of squared gradients of weights */
+    private final double[] gradients;
+    /** Running means of features */
+    private final double[] means;
+    /** Running sums of squared deviations of features from their means */
+    private final double[] deviations;
+    /** Bias */
+    private double         bias         = 0d;
+    /** Sum of squared gradients of the bias */
+    private double         biasGradient = 0d;
+    /** Number of samples */
+    private long           count        = 0L;
+
+    /**
+     * Creates a new instance
+     * @param dimension size of feature vectors
+     * @param learningRate learning rate
+     */
+    OnlineLogisticRegression(int dimension, double learningRate) {
+        if (learningRate <= 0d) {
+            throw new IllegalArgumentException("Learning rate must be positive: " + learningRate);
+        }
+        this.learningRate = learningRate;
+        this.weights = new double[dimension];
+        this.gradients = new double[dimension];
+        this.means = new double[dimension];
+        this.deviations = new double[dimension];
+    }
+
+    /**
+     * Updates the model with the given sample
+     * @param x features
+     * @param y label, 0 or 1
+     */
+    void update(double[] x, int y) {
+
+        // Check
+        if (x.length != weights.length) {
+            throw new IllegalArgumentException("Inconsistent feature size: " + weights.length + " and " + x.length);
+        }
+
+        // Update running statistics
+        count++;
+        for (int i = 0; i < x.length; i++) {
+            double delta = x[i] - means[i];
+            means[i] += delta / count;
+            deviations[i] += delta * (x[i] - means[i]);
+        }
+
+        // Gradient step
+        double[] z = standardize(x);
+        double error = getProbability(z) - y;
+        for (int i = 0; i < z.length; i++) {
+            double gradient = error * z[i];
+            if (gradient != 0d) {
+                gradients[i] += gradient * gradient;
+                weights[i] -= learningRate * gradient / (Math.sqrt(gradients[i]) + EPSILON);
+            }
+        }
+        biasGradient += error * error;
+        bias -= learningRate * error / (Math.sqrt(biasGradient) + EPSILON);
+    }
+
+    @Override
+    public int predict(double[] x) {
+        return predict(x, new double[] {0, 0});
+    }
+
+    @Override
+    public int predict(double[] x, double[] posteriori) {
+        double probability = getProbability(standardize(x));
+        posteriori[0] = 1d - probability;
+        posteriori[1] = probability;
+        return probability > 0.5d ? 1 : 0;
+    }
+
+    /**
+     * Returns the probability of label 1 for the given standardized features
+     * @param z
+     * @return
+     */
+    private double getProbability(double[] z) {
+        double score = bias;
+        for (int i = 0; i < z.length; i++) {
+            score += weights[i] * z[i];
+        }
+        return 1d / (1d + Math.exp(-score));
+    }
+
+    /**
+     * Standardizes the given features with the current estimates. Features with a standard deviation of zero are
+     * only centered.
+     * @param x
+     * @return
+     */
+    private double[] standardize(double[] x) {
+        double[] z = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            double deviation = count > 1 ? Math.sqrt(deviations[i] / (count - 1)) : 0d;
+            z[i] = deviation > EPSILON ? (x[i] - means[i]) / deviation : x[i] - means[i];
+        }
+        return z;
+    }
+}
@@ -40,6 +40,9 @@ public class PhantomAnonymization {
     // TODO: Hard-coded output paths should be avoided
     private final static String        RESULT_DIRECTORY = "results/";
 
+    /** Lock for series summary files, which are shared by assessments running in parallel */
+    private final static Object        SUMMARY_LOCK     = new Object();
+
     /** Number of threads to use */
     private final int                  threadCount;
 
@@ -61,6 +64,9 @@ public class PhantomAnonymization {
     /** File*/
     private final File                 experimentSeriesSummaryFile;
 
+    /** Cache of classifiers, null if classifiers are not cached */
+    private ModelCache                 modelCache;
+
     /**
      * Creates a new instance
      * @param riskAssessmentConfig
@@ -82,9 +88,11 @@ public class PhantomAnonymization {
             resultFolder.mkdir();
         }
         this.experimentSeriesSummaryFile = new File(RESULT_DIRECTORY + seriesName + ".csv");
-        if (!experimentSeriesSummaryFile.exists()) {
-            experimentSeriesSummaryFile.createNewFile();
-            writeToExperimentSeriesSummaryFile("ExperimentName;StartTime;EndTime;SMConfig;DataConfig;AnonymizationConfig;FeartureType;LogFile;SummaryFile;CgfsFile");
+        synchronized (SUMMARY_LOCK) {
+            if (!experimentSeriesSummaryFile.exists()) {
+                experimentSeriesSummaryFile.createNewFile();
+                writeToExperimentSeriesSummaryFile("ExperimentName;StartTime;EndTime;SMConfig;DataConfig;AnonymizationConfig;FeartureType;LogFile;SummaryFile;CgfsFile");
+            }
         }
     }
     
@@ -103,6 +111,7 @@ public class PhantomAnonymization {
             
             // Perform actual assessment
             PhantomAnonymizationAssessment assessment = new PhantomAnonymizationAssessment(threadCount, RESULT_DIRECTORY, assessmentName, riskAssessmentConfig, anonymizationConfig, dataConfig, statisticsConfig, featureType);
+            assessment.setModelCache(modelCache);
             assessment.execute();
             
             // Write to experiments summary
@@ -110,6 +119,14 @@ public class PhantomAnonymization {
         }  
     }
     
+    /**
+     * Sets a cache used to reuse classifiers trained on identical training data with identical settings
+     * @param modelCache
+     */
+    public void setModelCache(ModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
     /**
      * Method to generate experiment name.
      * @param startTime
@@ -167,9 +184,11 @@ public class PhantomAnonymization {
      * @throws IOException
      */
     private void writeToExperimentSeriesSummaryFile(String line) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(experimentSeriesSummaryFile, true));
-        writer.append(line);
-        writer.newLine();
-        writer.close();
+        synchronized (SUMMARY_LOCK) {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(experimentSeriesSummaryFile, true));
+            writer.append(line);
+            writer.newLine();
+            writer.close();
+        }
     }
 }
@@ -16,10 +16,18 @@ package org.bihmi.phantomanonymization.phantom;
 
 import com.google.common.util.concurrent.AtomicDouble;
 import lombok.extern.slf4j.Slf4j;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.bihmi.anonymization.anon.AnonymizationMethods;
 import org.bihmi.anonymization.anon.AnonymizationMethods.AnonymizationMethod;
+import org.bihmi.anonymization.anon.AnonymizationOutput;
 import org.bihmi.anonymization.config.AnonymizationConfig;
 import org.bihmi.anonymization.config.AttributeConfig;
 import org.bihmi.anonymization.config.DataConfig;
@@ -29,6 +37,7 @@ import org.bihmi.phantomanonymization.config.StatisticsConfig;
 import org.bihmi.phantomanonymization.features.Dictionary;
 import org.bihmi.phantomanonymization.features.FeatureType;
 import org.bihmi.phantomanonymization.io.ReportWriter;
+import org.bihmi.phantomanonymization.target.TargetDistanceIndex;
 import org.bihmi.phantomanonymization.target.TargetSelection;
 import org.apache.commons.math3.util.Pair;
 import org.deidentifier.arx.Data;
@@ -38,6 +47,8 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
 
 /**
  * Class to perform risk assessment with multiple threads
@@ -80,7 +91,6 @@ public class PhantomAnonymizationAssessment {
             while ((job = jobQueue.poll()) != null && isRunning() ) {
                 
                 // Prepare
-                Set<String> resultLines = new HashSet<>();
                 job.population = population;
                 
                 // Execute
@@ -91,14 +101,29 @@ public class PhantomAnonymizationAssessment {
                      
                     // Update stats
                     trueGuesses.get(job.targetId).getAndAdd(result.predictedLabel == result.trueLabel ? 1 : 0);
-                     
-                    // Add result lines for log file
-                    resultLines.add(job.runID + ";" + job.targetId + ";" + result);
+                    executedTests.get(job.targetId).incrementAndGet();
+                    for (int i = 0; i < result.gridPredictedLabels.length; i++) {
+                        gridTrueGuesses.getAndAdd(i, result.gridPredictedLabels[i] == result.trueLabel ? 1 : 0);
+                    }
                 }
 
-                // Write to log file
-                reportWriter.writeToLogFile(resultLines);
+                // Write to log file, once all statistics have been computed
+                if (job.pendingStatistics.isEmpty()) {
+                    writeToLogFile(job);
+                } else {
+                    final Job completedJob = job;
+                    pendingLogEntries.add(CompletableFuture.allOf(job.pendingStatistics.toArray(new CompletableFuture<?>[0])).handle((result, error) -> {
+                        if (error != null) {
+                            log.error("Failed to compute statistics for target " + completedJob.targetId + " in run " + completedJob.runID, error);
+                        }
+                        writeToLogFile(completedJob);
+                        return null;
+                    }));
+                }
             }
+            
+            // Threads of finished workers can be used for training
+            activeThreads.decrementAndGet();
         }
     }
     
@@ -122,6 +147,12 @@ public class PhantomAnonymizationAssessment {
             double predictionProbability;
             /** Statistics wrapper */
             StatisticsWrapper statistics;
+            /** Number of local generalization iterations performed to anonymize the sample */
+            int localGeneralizationIterations;
+            /** Predicted labels of the classifier grid */
+            int[] gridPredictedLabels;
+            /** Probabilities of the predictions of the classifier grid */
+            double[] gridPredictionProbabilities;
             
             /**
              * Creates a new instance
@@ -129,18 +160,37 @@ public class PhantomAnonymizationAssessment {
              * @param trueLabel expected label for the sample
              * @param prediction predicted label for the test sample
              * @param statistics metrics of the anonymized data
+             * @param localGeneralizationIterations number of local generalization iterations performed
+             * @param gridPredictions predictions of the classifier grid for the test sample
              */
-            Result(int iteration, boolean trueLabel, Pair<Boolean, Double> prediction, StatisticsWrapper statistics) {
+            Result(int iteration, boolean trueLabel, Pair<Boolean, Double> prediction, StatisticsWrapper statistics, int localGeneralizationIterations, Pair<Boolean, Double>[] gridPredictions) {
                 this.iteration = iteration;
                 this.trueLabel = trueLabel ? 1 : 0;
                 this.predictedLabel = prediction.getFirst() ? 1 : 0;
                 this.predictionProbability = prediction.getSecond();
                 this.statistics = statistics;
+                this.localGeneralizationIterations = localGeneralizationIterations;
+                this.gridPredictedLabels = new int[gridPredictions.length];
+                this.gridPredictionProbabilities = new double[gridPredictions.length];
+                for (int i = 0; i < gridPredictions.length; i++) {
+                    this.gridPredictedLabels[i] = gridPredictions[i].getFirst() ? 1 : 0;
+                    this.gridPredictionProbabilities[i] = gridPredictions[i].getSecond();
+                }
             }
 
             @Override
             public String toString() {
-                return iteration + ";" + trueLabel + ";" + predictedLabel + ";" + predictionProbability + ";" + statistics.toString();
+                StringBuilder builder = new StringBuilder();
+                builder.append(iteration + ";" + trueLabel + ";" + predictedLabel + ";" + predictionProbability);
+                String metrics = statistics.toString();
+                if (!metrics.isEmpty()) {
+                    builder.append(";").append(metrics);
+                }
+                builder.append(";").append(localGeneralizationIterations);
+                for (int i = 0; i < gridPredictedLabels.length; i++) {
+                    builder.append(";").append(gridPredictedLabels[i]).append(";").append(gridPredictionProbabilities[i]);
+                }
+                return builder.toString();
             }
         }
         
@@ -160,6 +210,8 @@ public class PhantomAnonymizationAssessment {
         int runID;
         /** List of results (one per each test sample) */
         List<Result> results = new ArrayList<>();
+        /** Statistics of test samples which are still being computed */
+        List<CompletableFuture<Void>> pendingStatistics = new ArrayList<>();
         
         /**
          * Creates a new instance
@@ -190,10 +242,87 @@ public class PhantomAnonymizationAssessment {
          * @param iteration number of test
          * @param trueLabel expected label for the sample
          * @param prediction predicted label for the test sample
-         * @param granularity granularity of the anonymized data
+         * @param statistics metrics of the anonymized data
+         * @param localGeneralizationIterations number of local generalization iterations performed
+         * @param gridPredictions predictions of the classifier grid for the test sample
          */
-        void addResult(int iteration, boolean trueLabel, Pair<Boolean, Double> prediction, StatisticsWrapper statistics) {
-            results.add(new Result(iteration, trueLabel, prediction, statistics));
+        void addResult(int iteration, boolean trueLabel, Pair<Boolean, Double> prediction, StatisticsWrapper statistics, int localGeneralizationIterations, Pair<Boolean, Double>[] gridPredictions) {
+            results.add(new Result(iteration, trueLabel, prediction, statistics, localGeneralizationIterations, gridPredictions));
+        }
+    }
+    
+    /**
+     * Out and in sample of an iteration, which may still be in the process of being anonymized
+     */
+    static class SamplePair {
+
+        /** Raw sample without target, null if loaded from checkpoint */
+        final Data rawOut;
+        /** Raw sample with target, null if loaded from checkpoint */
+        final Data rawIn;
+        /** Anonymized sample without target */
+        final Future<AnonymizationOutput> out;
+        /** Anonymized sample with target */
+        final Future<AnonymizationOutput> in;
+        /** Whether the anonymized samples have been loaded from a checkpoint */
+        final boolean fromCheckpoint;
+
+        /**
+         * Creates a new instance for samples loaded from a checkpoint
+         * @param out
+         * @param in
+         */
+        SamplePair(DataHandle out, DataHandle in) {
+            this.rawOut = null;
+            this.rawIn = null;
+            this.out = CompletableFuture.completedFuture(new AnonymizationOutput(out, -1));
+            this.in = CompletableFuture.completedFuture(new AnonymizationOutput(in, -1));
+            this.fromCheckpoint = true;
+        }
+
+        /**
+         * Creates a new instance for samples submitted for anonymization
+         * @param rawOut
+         * @param rawIn
+         * @param out
+         * @param in
+         */
+        SamplePair(Data rawOut, Data rawIn, Future<AnonymizationOutput> out, Future<AnonymizationOutput> in) {
+            this.rawOut = rawOut;
+            this.rawIn = rawIn;
+            this.out = out;
+            this.in = in;
+            this.fromCheckpoint = false;
+        }
+
+        /**
+         * Waits for the anonymization of the sample without target
+         * @return
+         */
+        AnonymizationOutput getOut() {
+            return await(out);
+        }
+
+        /**
+         * Waits for the anonymization of the sample with target
+         * @return
+         */
+        AnonymizationOutput getIn() {
+            return await(in);
+        }
+
+        /**
+         * Waits for the given anonymization to finish
+         */
+        private static AnonymizationOutput await(Future<AnonymizationOutput> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for anonymization", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Anonymization failed", e.getCause());
+            }
         }
     }
     
@@ -243,9 +372,54 @@ public class PhantomAnonymizationAssessment {
     /** Report writer */
     private ReportWriter reportWriter;
 
+    /** Distances of all records of the population, used to report the distances of targets */
+    private final TargetDistanceIndex distanceIndex;
+
     /**  Number of true guesses for targets */
     private final Map<Integer, AtomicInteger> trueGuesses = new HashMap<>();
 
+    /**  Number of tests executed for targets */
+    private final Map<Integer, AtomicInteger> executedTests = new HashMap<>();
+
+    /** Durations of all anonymizations performed in milliseconds */
+    private final List<Long> anonymizationDurations = Collections.synchronizedList(new ArrayList<>());
+
+    /** Number of anonymizations which exceeded the time budget */
+    private final AtomicInteger anonymizationsOverBudget = new AtomicInteger();
+
+    /** Number of sample pairs dropped because an anonymization exceeded the time budget */
+    private final AtomicInteger failedSamplePairs = new AtomicInteger();
+
+    /** Durations of all classifier trainings in milliseconds */
+    private final List<Long> trainingDurations = Collections.synchronizedList(new ArrayList<>());
+
+    /** Size of feature vectors before and after dimensionality reduction */
+    private final int[] featureDimensions = new int[] {-1, -1};
+
+    /** Number of correct predictions of each configuration of the classifier grid */
+    private final AtomicIntegerArray gridTrueGuesses;
+
+    /** Executor used to train classifiers in parallel, null if training is sequential */
+    private final ExecutorService trainingExecutor;
+
+    /** Cache of classifiers, null if classifiers are not cached */
+    private ModelCache modelCache;
+
+    /** Settings of statistics computed for test samples */
+    private final StatisticsContext statisticsContext;
+
+    /** Low-priority executor used to compute classification accuracies, null if they are computed inline */
+    private final ExecutorService classificationExecutor;
+
+    /** Classification accuracy is computed for every n-th test iteration */
+    private final int classificationIterationStep;
+
+    /** Log entries of jobs which wait for statistics to be computed */
+    private final List<CompletableFuture<Void>> pendingLogEntries = Collections.synchronizedList(new ArrayList<>());
+
+    /** Number of threads which still execute jobs */
+    private final AtomicInteger activeThreads = new AtomicInteger();
+
     /** An array of threads that make up the thread pool for concurrent execution */
     private final Thread[] threadPool;
 
@@ -264,6 +438,9 @@ public class PhantomAnonymizationAssessment {
     /** The method of anonymization to be used */
     private final AnonymizationMethods.AnonymizationMethod anonymizationMethod;
 
+    /** Anonymization configuration */
+    private final AnonymizationConfig anonymizationConfig;
+
     /** The type of feature to use */
     private final FeatureType featureType;
 
@@ -282,6 +459,9 @@ public class PhantomAnonymizationAssessment {
     /** A queue of jobs to be processed, maintained in a thread-safe manner */
     private final Queue<Job> jobQueue = new LinkedBlockingQueue<>();
 
+    /** Executor shared by all jobs to anonymize samples in parallel, null if samples are anonymized sequentially */
+    private final ExecutorService anonymizationExecutor;
+
     /**
      * Creates a new instance and starts processing
      * @param threadCount
@@ -306,6 +486,7 @@ public class PhantomAnonymizationAssessment {
         // Store settings
         this.riskAssessmentConfig = riskAssessmentConfig;
         this.anonymizationMethod = AnonymizationMethods.CONFIG_ANONYMIZATION(anonymizationConfig);
+        this.anonymizationConfig = anonymizationConfig;
         this.featureType = featureType;
         this.dataConfig = dataConfig;
         this.reportWriter = new ReportWriter(resultDirectory, assessmentName, riskAssessmentConfig, anonymizationConfig, dataConfig);
@@ -328,8 +509,9 @@ public class PhantomAnonymizationAssessment {
         }
         
         // Get targets
-        TargetSelection targetSelection = new TargetSelection(referenceDataset);
-        Set<Integer> targets = targetSelection.getTargets(riskAssessmentConfig.getTargetType(), riskAssessmentConfig.getTargetCount(), riskAssessmentConfig.getTargetImportFile());
+        TargetSelection targetSelection = TargetSelection.getInstance(dataConfig, referenceDataset);
+        this.distanceIndex = targetSelection.getDistanceIndex();
+        Set<Integer> targets = targetSelection.getTargets(riskAssessmentConfig.getTargetType(), riskAssessmentConfig.getTargetCount(), riskAssessmentConfig.getTargetImportFile(), riskAssessmentConfig.getTargetNeighbors());
 
         // Initialize checkpoint and set flag if checkpoint will be used
         if(riskAssessmentConfig.getUseCheckpointData()) {
@@ -342,27 +524,117 @@ public class PhantomAnonymizationAssessment {
         // Initialize map of guesses
         for(Integer target : targets) {
             trueGuesses.put(target, new AtomicInteger(0));
+            executedTests.put(target, new AtomicInteger(0));
         }
 
-        // Initialize dictionary
+        // Initialize dictionary, which is frozen and shared by all jobs
         this.dictionary = getFilledDictionaryFromAttributeConfig(dataConfig.getAttributeConfigs());
         dictionary.addAllPossibleHierarchyValues(dataConfig.getAttributeConfigs(), referenceDataset);
+        dictionary.addAllValues(dataConfig.getAttributeConfigs(), referenceDataset);
+        dictionary.freeze();
 
         log.info("Assessment will require " + this.runsRequired + " anonymizations and is executed with " + threadCount + " threads.");
 
         // Create jobs
         createJobs(riskAssessmentConfig, referenceDataset, targets);
         
-        // Initialize statistics wrapper
-        StatisticsWrapper.initialize(dataConfig, statisticsConfig);
+        // Initialize statistics
+        this.statisticsContext = new StatisticsContext(dataConfig, statisticsConfig, riskAssessmentConfig.getMetrics());
+
+        // Create executor used to compute classification accuracies. When its queue is full, workers compute
+        // accuracies themselves, which bounds the number of anonymized test samples retained.
+        if (statisticsContext.isClassificationPerformed()) {
+            int classificationThreads = Math.max(1, statisticsConfig.getClassificationThreads());
+            this.classificationIterationStep = Math.max(1, statisticsConfig.getClassificationIterationStep());
+            this.classificationExecutor = new ThreadPoolExecutor(classificationThreads, classificationThreads, 0L, TimeUnit.MILLISECONDS,
+                                                                 new LinkedBlockingQueue<>(2 * threadCount),
+                                                                 runnable -> {
+                                                                     Thread thread = new Thread(runnable);
+                                                                     thread.setDaemon(true);
+                                                                     thread.setPriority(Thread.MIN_PRIORITY);
+                                                                     return thread;
+                                                                 },
+                                                                 new ThreadPoolExecutor.CallerRunsPolicy());
+        } else {
+            this.classificationIterationStep = 1;
+            this.classificationExecutor = null;
+        }
+
+        // Create executor used by jobs to anonymize samples
+        if (riskAssessmentConfig.getSampleParallelism() != SampleParallelism.NONE) {
+            this.anonymizationExecutor = Executors.newFixedThreadPool(threadCount, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.anonymizationExecutor = null;
+        }
+
+        // Create executor used to train random forests and classifier grids on threads which are no longer used for jobs
+        this.gridTrueGuesses = new AtomicIntegerArray(riskAssessmentConfig.getClassifierGrid().size());
+        if ((riskAssessmentConfig.getClassifierType() == ClassifierType.RF && riskAssessmentConfig.getClassifierConfig().isRfParallelTraining()) ||
+            !riskAssessmentConfig.getClassifierGrid().isEmpty()) {
+            this.trainingExecutor = Executors.newFixedThreadPool(threadCount, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.trainingExecutor = null;
+        }
 
         // Create threads
+        activeThreads.set(threadCount);
         threadPool = new Thread[threadCount];
         for (int i = 0; i < threadCount; i++) {
             threadPool[i] = new Thread(new BenchmarkThread(DataLoader.getData(dataConfig)));
         }
     }
 
+    /**
+     * Computes the classification accuracy of an anonymized test sample on the classification executor, stores
+     * the statistics in the checkpoint and releases the handle. The handle must no longer be used by the caller.
+     * @param job job
+     * @param k test iteration
+     * @param statistics statistics to complete
+     * @param handle anonymized test sample
+     * @param artifactType artifact type
+     * @return
+     */
+    private CompletableFuture<Void> classify(Job job, int k, StatisticsWrapper statistics, DataHandle handle, Checkpoint.ArtifactType artifactType) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                statistics.performClassification(statisticsContext, handle);
+                if (this.useCheckpoint) {
+                    checkpoint.saveStatistics(job.targetId, job.runID, k, statistics, artifactType);
+                }
+            } finally {
+                handle.release();
+            }
+        }, classificationExecutor);
+    }
+
+    /**
+     * Writes the results of a job to the log file
+     * @param job
+     */
+    private void writeToLogFile(Job job) {
+        Set<String> resultLines = new HashSet<>();
+        for (Job.Result result : job.results) {
+            resultLines.add(job.runID + ";" + job.targetId + ";" + result);
+        }
+        reportWriter.writeToLogFile(resultLines);
+    }
+
+    /**
+     * Sets a cache used to reuse classifiers trained on identical training data with identical settings
+     * @param modelCache cache or null
+     */
+    public void setModelCache(ModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
     /**
      * Called to start the threads
      */
@@ -381,8 +653,39 @@ public class PhantomAnonymizationAssessment {
             t.join();
         }
         
+        // Shutdown executors
+        if (anonymizationExecutor != null) {
+            anonymizationExecutor.shutdown();
+        }
+        if (trainingExecutor != null) {
+            trainingExecutor.shutdown();
+        }
+        
+        // Wait for log entries which depend on classification accuracies
+        List<CompletableFuture<Void>> pending;
+        synchronized (pendingLogEntries) {
+            pending = new ArrayList<>(pendingLogEntries);
+        }
+        for (CompletableFuture<Void> entry : pending) {
+            entry.join();
+        }
+        if (classificationExecutor != null) {
+            classificationExecutor.shutdown();
+        }
+        
         // Write Summary file
-        reportWriter.writeSummaryFile(riskAssessmentConfig, dataConfig, trueGuesses);
+        reportWriter.writeSummaryFile(riskAssessmentConfig, distanceIndex, trueGuesses, executedTests);
+        reportWriter.writeLatencySummary(anonymizationDurations, anonymizationsOverBudget.get(), failedSamplePairs.get());
+        synchronized (featureDimensions) {
+            reportWriter.writeTrainingSummary(trainingDurations, featureDimensions[0], featureDimensions[1]);
+        }
+        if (gridTrueGuesses.length() > 0) {
+            int tests = 0;
+            for (AtomicInteger count : executedTests.values()) {
+                tests += count.get();
+            }
+            reportWriter.writeGridSummary(riskAssessmentConfig.getClassifierGrid(), gridTrueGuesses, tests);
+        }
     }
     
     /**
@@ -395,40 +698,70 @@ public class PhantomAnonymizationAssessment {
         // Prepare
         Set<String> attributesToConsider = getAttributesToConsider(riskAssessmentConfig.getAttributesForAttack(), job.population);
         // TODO: Maybe this should be configurable in risk assessment config
-        Dictionary clonedDictionary = dictionary.clone();
-        MembershipPredictionModel model = new MembershipPredictionModel(dataConfig.getAttributeConfigs(), clonedDictionary);
+        MembershipPredictionModel model = new MembershipPredictionModel(dataConfig.getAttributeConfigs(), dictionary, riskAssessmentConfig,
+                                                                        2 * riskAssessmentConfig.getRunTrainingCount(),
+                                                                        2 * riskAssessmentConfig.getRunTestCount());
+        if (trainingExecutor != null) {
+            model.setTrainingExecutor(trainingExecutor, () -> threadPool.length - activeThreads.get() + 1);
+        }
+        model.setModelCache(modelCache);
+        boolean parallelIterations = riskAssessmentConfig.getSampleParallelism() == SampleParallelism.ITERATIONS;
+        long fingerprint = this.useCheckpoint ? model.getFingerprint(attributesToConsider) : 0L;
+
+        // Load training features from checkpoint, if available
+        double[][][] trainingFeatures = new double[riskAssessmentConfig.getRunTrainingCount()][][];
+        for (int k = 0; k < trainingFeatures.length; k++) {
+            trainingFeatures[k] = loadFeatures(job, k, fingerprint, Checkpoint.ArtifactType.TRAIN_OUT, Checkpoint.ArtifactType.TRAIN_IN);
+        }
+
+        // Submit all training samples in advance, if configured
+        SamplePair[] trainingPairs = new SamplePair[riskAssessmentConfig.getRunTrainingCount()];
+        if (parallelIterations) {
+            for (int k = 0; k < trainingPairs.length; k++) {
+                if (trainingFeatures[k] == null) {
+                    trainingPairs[k] = getTrainingPair(job, k);
+                }
+            }
+        }
 
         // Perform training
-        for (int k = 0; k < riskAssessmentConfig.getRunTrainingCount(); k++) {
+        int trainingCount = 0;
+        for (int k = 0; k < trainingPairs.length; k++) {
+
+            // Train with features from checkpoint
+            if (trainingFeatures[k] != null) {
+                model.train(trainingFeatures[k][0], false);
+                model.train(trainingFeatures[k][1], true);
+                trainingFeatures[k] = null;
+                trainingCount++;
+                continue;
+            }
 
             // Anonymize training data or load anonymized data using checkpoint function
-            DataHandle rTrainOutHandle;
-            DataHandle rTrainInHandle;
-			if (this.useCheckpoint
-				&& checkpoint.checkExistence(job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_OUT)
-				&& checkpoint.checkExistence(job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_IN)) {
-			    
-			    // Load from checkpoint
-				rTrainOutHandle = checkpoint.loadData(job.population, job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_OUT);
-				rTrainInHandle = checkpoint.loadData(job.population, job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_IN);
-            } else {
-                
-                // Draw sample (trainOut) without target and create a copy of it with target (trainIn)
-                Set<Integer> trainOut = getSubSample(job.backgroundIds, riskAssessmentConfig.getSizeSampleTraining());
-                Set<Integer> trainIn = getSampleWithTarget(trainOut, job.targetId);
-                Data rTrainOutRaw = getCopy(job.population, trainOut); 
-                Data rTrainInRaw = getCopy(job.population, trainIn); 
-                rTrainOutHandle = anonymize(rTrainOutRaw, anonymizationMethod);
-                rTrainInHandle = anonymize(rTrainInRaw, anonymizationMethod);
-                if (this.useCheckpoint) {
-                    checkpoint.saveData(job.targetId, job.runID, k, rTrainOutHandle, Checkpoint.ArtifactType.TRAIN_OUT);
-                    checkpoint.saveData(job.targetId, job.runID, k, rTrainInHandle, Checkpoint.ArtifactType.TRAIN_IN);
-                }
+            SamplePair pair = resolve(parallelIterations ? trainingPairs[k] : getTrainingPair(job, k), () -> drawTrainingPair(job));
+            trainingPairs[k] = null;
+            if (pair == null) {
+                continue;
+            }
+            trainingCount++;
+            DataHandle rTrainOutHandle = pair.getOut().getHandle();
+            DataHandle rTrainInHandle = pair.getIn().getHandle();
+            if (this.useCheckpoint && !pair.fromCheckpoint) {
+                checkpoint.saveData(job.targetId, job.runID, k, rTrainOutHandle, Checkpoint.ArtifactType.TRAIN_OUT);
+                checkpoint.saveData(job.targetId, job.runID, k, rTrainInHandle, Checkpoint.ArtifactType.TRAIN_IN);
             }
 			
+            // Extract features
+            double[] featuresOut = model.extract(rTrainOutHandle, featureType, attributesToConsider);
+            double[] featuresIn = model.extract(rTrainInHandle, featureType, attributesToConsider);
+            if (this.useCheckpoint) {
+                checkpoint.saveFeatures(job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_OUT, featureType, fingerprint, featuresOut);
+                checkpoint.saveFeatures(job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_IN, featureType, fingerprint, featuresIn);
+            }
+
             // Train
-            model.train(rTrainOutHandle, false, featureType, attributesToConsider);
-            model.train(rTrainInHandle, true, featureType, attributesToConsider);
+            model.train(featuresOut, false);
+            model.train(featuresIn, true);
             
             // Release DataHandle
             rTrainOutHandle.release();
@@ -437,61 +770,121 @@ public class PhantomAnonymizationAssessment {
 
         // Create array to store granularity of testSamples
         StatisticsWrapper[] statistics = new StatisticsWrapper[riskAssessmentConfig.getRunTestCount()*2];
+        int[] localGeneralizationIterations = new int[riskAssessmentConfig.getRunTestCount()*2];
         
+        // Skip tests if all training samples failed, as no classifier can be trained
+        int testIterations = trainingCount == 0 ? 0 : riskAssessmentConfig.getRunTestCount();
+
+        // Submit all test samples in advance, if configured
+        SamplePair[] testPairs = new SamplePair[testIterations];
+        List<Integer> testedIterations = new ArrayList<>();
+        double[][][] testFeatures = new double[testIterations][][];
+        for (int k = 0; k < testFeatures.length; k++) {
+            testFeatures[k] = loadFeatures(job, k, fingerprint, Checkpoint.ArtifactType.TEST_OUT, Checkpoint.ArtifactType.TEST_IN);
+        }
+        if (parallelIterations) {
+            for (int k = 0; k < testPairs.length; k++) {
+                if (testFeatures[k] == null) {
+                    testPairs[k] = getTestPair(job, k);
+                }
+            }
+        }
+
         // Perform tests
-        for(int k = 0; k < riskAssessmentConfig.getRunTestCount(); k++) {
+        for(int k = 0; k < testPairs.length; k++) {
 
-            // Anonymize training data or load anonymized data using checkpoint function
-            DataHandle rTestOutHandle;
-            DataHandle rTestInHandle;
+            // Test with features and statistics from checkpoint
+            if (testFeatures[k] != null) {
+                statistics[2*k] = checkpoint.loadTestDataStatistics(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_OUT, statisticsContext);
+                statistics[2*k+1] = checkpoint.loadTestDataStatistics(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_IN, statisticsContext);
+                localGeneralizationIterations[2*k] = -1;
+                localGeneralizationIterations[2*k+1] = -1;
+                model.test(testFeatures[k][0]);
+                model.test(testFeatures[k][1]);
+                testFeatures[k] = null;
+                testedIterations.add(k);
+                continue;
+            }
+
+            // Anonymize test data or load anonymized data using checkpoint function
+            SamplePair pair = resolve(parallelIterations ? testPairs[k] : getTestPair(job, k), () -> drawTestPair(job));
+            testPairs[k] = null;
+            if (pair == null) {
+                continue;
+            }
+            AnonymizationOutput rTestOut = pair.getOut();
+            AnonymizationOutput rTestIn = pair.getIn();
+            DataHandle rTestOutHandle = rTestOut.getHandle();
+            DataHandle rTestInHandle = rTestIn.getHandle();
             StatisticsWrapper statisticsOut;
             StatisticsWrapper statisticsIn;
-			if (this.useCheckpoint
-			    && checkpoint.checkExistence(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_OUT)
-				&& checkpoint.checkExistence(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_IN)) {
+            boolean deferred = false;
+			if (pair.fromCheckpoint) {
 			    
 			    // Load from checkpoint
-                rTestOutHandle = checkpoint.loadData(job.population, job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_OUT);
-                rTestInHandle = checkpoint.loadData(job.population, job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_IN);
-                statisticsOut = checkpoint.loadTestDataStatistics(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_OUT);
-                statisticsIn = checkpoint.loadTestDataStatistics(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_IN);
+                statisticsOut = checkpoint.loadTestDataStatistics(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_OUT, statisticsContext);
+                statisticsIn = checkpoint.loadTestDataStatistics(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_IN, statisticsContext);
             } else {
                 
-                // Calculate
-                Set<Integer> testOut = getSubSample(job.cohortIds, riskAssessmentConfig.getSizeSampleTest());
-                Set<Integer> testIn = getSampleWithTarget(testOut , job.targetId);
-                Data rTestOutRaw = getCopy(job.population, testOut); 
-                Data rTestInRaw = getCopy(job.population, testIn); 
-                rTestOutHandle = anonymize(rTestOutRaw, anonymizationMethod);
-                rTestInHandle = anonymize(rTestInRaw, anonymizationMethod);
-                statisticsOut = new StatisticsWrapper(rTestOutRaw, rTestOutHandle);
-                statisticsIn = new StatisticsWrapper(rTestInRaw, rTestInHandle);
+                // Calculate, classification accuracy is computed later
+                deferred = classificationExecutor != null;
+                statisticsOut = new StatisticsWrapper(statisticsContext, pair.rawOut, rTestOutHandle, !deferred);
+                statisticsIn = new StatisticsWrapper(statisticsContext, pair.rawIn, rTestInHandle, !deferred);
                 if (this.useCheckpoint) {
-                    checkpoint.saveData(job.targetId, job.runID, k, rTestOutHandle, statisticsOut, Checkpoint.ArtifactType.TEST_OUT);
-                    checkpoint.saveData(job.targetId, job.runID, k, rTestInHandle, statisticsIn, Checkpoint.ArtifactType.TEST_IN);
+                    checkpoint.saveData(job.targetId, job.runID, k, rTestOutHandle, deferred ? null : statisticsOut, Checkpoint.ArtifactType.TEST_OUT);
+                    checkpoint.saveData(job.targetId, job.runID, k, rTestInHandle, deferred ? null : statisticsIn, Checkpoint.ArtifactType.TEST_IN);
                 }
             }
 			
 			// Store statistics
 			statistics[2*k] = statisticsOut;
 			statistics[2*k+1] = statisticsIn;
+			localGeneralizationIterations[2*k] = rTestOut.getLocalGeneralizationIterations();
+			localGeneralizationIterations[2*k+1] = rTestIn.getLocalGeneralizationIterations();
 			
+			// Extract features
+			double[] featuresOut = model.extract(rTestOutHandle, featureType, attributesToConsider);
+			double[] featuresIn = model.extract(rTestInHandle, featureType, attributesToConsider);
+			if (this.useCheckpoint) {
+			    checkpoint.saveFeatures(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_OUT, featureType, fingerprint, featuresOut);
+			    checkpoint.saveFeatures(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_IN, featureType, fingerprint, featuresIn);
+			}
+
 			// Store test data
-			model.test(rTestOutHandle, featureType, attributesToConsider);
-			model.test(rTestInHandle, featureType, attributesToConsider);
+			model.test(featuresOut);
+			model.test(featuresIn);
+			testedIterations.add(k);
 			
-            // Release
-            rTestOutHandle.release();
-            rTestInHandle.release();
+            // Release, or hand over to classification which releases the handles when done
+            if (deferred && k % classificationIterationStep == 0) {
+                job.pendingStatistics.add(classify(job, k, statisticsOut, rTestOutHandle, Checkpoint.ArtifactType.TEST_OUT));
+                job.pendingStatistics.add(classify(job, k, statisticsIn, rTestInHandle, Checkpoint.ArtifactType.TEST_IN));
+            } else {
+                if (deferred && this.useCheckpoint) {
+                    checkpoint.saveStatistics(job.targetId, job.runID, k, statisticsOut, Checkpoint.ArtifactType.TEST_OUT);
+                    checkpoint.saveStatistics(job.targetId, job.runID, k, statisticsIn, Checkpoint.ArtifactType.TEST_IN);
+                }
+                rTestOutHandle.release();
+                rTestInHandle.release();
+            }
         }
         
-        // Perform prediction
-		Pair<Boolean, Double>[] prediction = model.predict(featureType, riskAssessmentConfig.getClassifierType(), attributesToConsider);
-        
-        // Store results
-        for(int k = 0; k < riskAssessmentConfig.getRunTestCount(); k++) {
-        	job.addResult(k, false, prediction[k*2], statistics[k*2]);
-        	job.addResult(k, true, prediction[k*2+1], statistics[k*2+1]);
+        // Perform prediction and store results
+        if (trainingCount == 0 || testedIterations.isEmpty()) {
+            log.warn("Skipping prediction for target " + job.targetId + " in run " + job.runID + " as all training or test samples failed");
+        } else {
+            Pair<Boolean, Double>[] prediction = model.predict(featureType, riskAssessmentConfig.getClassifierType(), attributesToConsider);
+            trainingDurations.add(model.getTrainingTime());
+            Pair<Boolean, Double>[][] gridPrediction = model.predict(riskAssessmentConfig.getClassifierGrid(), riskAssessmentConfig.getClassifierType());
+            synchronized (featureDimensions) {
+                featureDimensions[0] = model.getFeatureDimension();
+                featureDimensions[1] = model.getReducedDimension();
+            }
+            for (int i = 0; i < testedIterations.size(); i++) {
+                int k = testedIterations.get(i);
+                job.addResult(k, false, prediction[i*2], statistics[k*2], localGeneralizationIterations[k*2], getColumn(gridPrediction, i*2));
+                job.addResult(k, true, prediction[i*2+1], statistics[k*2+1], localGeneralizationIterations[k*2+1], getColumn(gridPrediction, i*2+1));
+            }
         }
         
         // Keep track of progress
@@ -505,6 +898,153 @@ public class PhantomAnonymizationAssessment {
         return job.results;
     }
 
+    /**
+     * Loads the feature vectors of the out and in sample of the given iteration from the checkpoint. Returns null if
+     * the checkpoint is not used or does not contain matching feature vectors for both samples and, for test samples,
+     * the corresponding statistics, which are checked by {@link Checkpoint#checkExistence(int, int, int, Checkpoint.ArtifactType)}.
+     * Samples without statistics, e.g. because the assessment has been interrupted before they were classified, are
+     * anonymized and extracted again.
+     */
+    private double[][] loadFeatures(Job job, int k, long fingerprint, Checkpoint.ArtifactType typeOut, Checkpoint.ArtifactType typeIn) {
+        
+        // Check
+        if (!this.useCheckpoint
+            || !checkpoint.checkExistence(job.targetId, job.runID, k, typeOut)
+            || !checkpoint.checkExistence(job.targetId, job.runID, k, typeIn)) {
+            return null;
+        }
+        
+        // Load
+        double[] featuresOut = checkpoint.loadFeatures(job.targetId, job.runID, k, typeOut, featureType, fingerprint);
+        double[] featuresIn = checkpoint.loadFeatures(job.targetId, job.runID, k, typeIn, featureType, fingerprint);
+        return featuresOut != null && featuresIn != null ? new double[][] {featuresOut, featuresIn} : null;
+    }
+
+    /**
+     * Loads the training samples of the given iteration from the checkpoint, or draws new samples and submits them
+     * for anonymization.
+     */
+    private SamplePair getTrainingPair(Job job, int k) {
+        
+        // Load from checkpoint
+        if (this.useCheckpoint
+            && checkpoint.checkExistence(job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_OUT)
+            && checkpoint.checkExistence(job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_IN)) {
+            return new SamplePair(checkpoint.loadData(job.population, job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_OUT),
+                                  checkpoint.loadData(job.population, job.targetId, job.runID, k, Checkpoint.ArtifactType.TRAIN_IN));
+        }
+        
+        // Draw
+        return drawTrainingPair(job);
+    }
+
+    /**
+     * Draws new training samples and submits them for anonymization.
+     */
+    private SamplePair drawTrainingPair(Job job) {
+        
+        // Draw sample (trainOut) without target and create a copy of it with target (trainIn)
+        Set<Integer> trainOut = getSubSample(job.backgroundIds, riskAssessmentConfig.getSizeSampleTraining());
+        Set<Integer> trainIn = getSampleWithTarget(trainOut, job.targetId);
+        return submit(getCopy(job.population, trainOut), getCopy(job.population, trainIn));
+    }
+
+    /**
+     * Loads the test samples of the given iteration from the checkpoint, or draws new samples and submits them
+     * for anonymization.
+     */
+    private SamplePair getTestPair(Job job, int k) {
+        
+        // Load from checkpoint
+        if (this.useCheckpoint
+            && checkpoint.checkExistence(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_OUT)
+            && checkpoint.checkExistence(job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_IN)) {
+            return new SamplePair(checkpoint.loadData(job.population, job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_OUT),
+                                  checkpoint.loadData(job.population, job.targetId, job.runID, k, Checkpoint.ArtifactType.TEST_IN));
+        }
+        
+        // Draw
+        return drawTestPair(job);
+    }
+
+    /**
+     * Draws new test samples and submits them for anonymization.
+     */
+    private SamplePair drawTestPair(Job job) {
+        
+        // Draw sample (testOut) without target and create a copy of it with target (testIn)
+        Set<Integer> testOut = getSubSample(job.cohortIds, riskAssessmentConfig.getSizeSampleTest());
+        Set<Integer> testIn = getSampleWithTarget(testOut , job.targetId);
+        return submit(getCopy(job.population, testOut), getCopy(job.population, testIn));
+    }
+
+    /**
+     * Waits for the anonymization of both samples and applies the policy configured for anonymizations exceeding
+     * the time budget.
+     * 
+     * @param pair the pair
+     * @param redraw draws and submits a new pair
+     * @return the pair to use, null if the pair has to be excluded
+     */
+    private SamplePair resolve(SamplePair pair, Supplier<SamplePair> redraw) {
+        
+        // Try until accepted
+        int retries = 0;
+        while (true) {
+            
+            // Wait and record durations
+            AnonymizationOutput out = pair.getOut();
+            AnonymizationOutput in = pair.getIn();
+            if (pair.fromCheckpoint) {
+                return pair;
+            }
+            anonymizationDurations.add(out.getDuration());
+            anonymizationDurations.add(in.getDuration());
+            if (!out.isOverBudget() && !in.isOverBudget()) {
+                return pair;
+            }
+            anonymizationsOverBudget.addAndGet((out.isOverBudget() ? 1 : 0) + (in.isOverBudget() ? 1 : 0));
+            
+            // Apply policy
+            switch (anonymizationConfig.getOverBudgetPolicy()) {
+            case ACCEPT:
+                return pair;
+            case RETRY:
+                if (retries++ >= anonymizationConfig.getOverBudgetRetries()) {
+                    return pair;
+                }
+                break;
+            case FAIL:
+                out.getHandle().release();
+                in.getHandle().release();
+                failedSamplePairs.incrementAndGet();
+                return null;
+            default:
+                throw new IllegalStateException("Unknown policy: " + anonymizationConfig.getOverBudgetPolicy());
+            }
+            
+            // Retry with a different sample
+            out.getHandle().release();
+            in.getHandle().release();
+            pair = redraw.get();
+        }
+    }
+
+    /**
+     * Submits the anonymization of both samples. If no executor is available, the samples are anonymized on the
+     * calling thread.
+     */
+    private SamplePair submit(Data rawOut, Data rawIn) {
+        if (anonymizationExecutor == null) {
+            return new SamplePair(rawOut, rawIn,
+                                  CompletableFuture.completedFuture(anonymize(rawOut, anonymizationMethod)),
+                                  CompletableFuture.completedFuture(anonymize(rawIn, anonymizationMethod)));
+        }
+        return new SamplePair(rawOut, rawIn,
+                              anonymizationExecutor.submit(() -> anonymize(rawOut, anonymizationMethod)),
+                              anonymizationExecutor.submit(() -> anonymize(rawIn, anonymizationMethod)));
+    }
+
     /**
      * Call to interrupt benchmark
      */
@@ -515,8 +1055,8 @@ public class PhantomAnonymizationAssessment {
     /**
      * Perform the anonymization
      */
-    private DataHandle anonymize(Data dataset,  AnonymizationMethods.AnonymizationMethod anonymization) {
-        return anonymization.anonymize(dataset);
+    private AnonymizationOutput anonymize(Data dataset,  AnonymizationMethods.AnonymizationMethod anonymization) {
+        return anonymization.anonymizeWithDetails(dataset);
     }
 
     /**
@@ -598,6 +1138,18 @@ public class PhantomAnonymizationAssessment {
         return result;
     }
 
+    /**
+     * Extracts the predictions of all classifier configurations for a test sample
+     */
+    private static Pair<Boolean, Double>[] getColumn(Pair<Boolean, Double>[][] predictions, int sample) {
+        @SuppressWarnings("unchecked")
+        Pair<Boolean, Double>[] result = new Pair[predictions.length];
+        for (int i = 0; i < predictions.length; i++) {
+            result[i] = predictions[i][sample];
+        }
+        return result;
+    }
+
     /**
      * Creates samples for the test sample and the adversary reference data excluding the targets.
      * The overlap defines the fractions of records from the test sample which are also in the adversary reference data.
@@ -0,0 +1,28 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+/**
+ * Degree of parallelism used to anonymize the samples of a single job
+ */
+public enum SampleParallelism {
+
+    /** Anonymize all samples sequentially on the thread executing the job */
+    NONE,
+    /** Anonymize the out and in sample of each iteration in parallel */
+    PAIRS,
+    /** Anonymize the samples of all iterations of a phase (training or test) in parallel */
+    ITERATIONS
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bihmi.anonymization.config.AttributeConfig;
+import org.bihmi.anonymization.config.DataConfig;
+import org.bihmi.phantomanonymization.config.StatisticsConfig;
+
+/**
+ * Settings shared by all statistics computed within an assessment. Instances are immutable and can be shared
+ * between threads.
+ */
+public class StatisticsContext {
+
+    /** List of categorical attributes */
+    private final List<String> categoricalAttributes;
+
+    /** List of continuous attributes */
+    private final List<String> continuousAttributes;
+
+    /** Flag indicating whether classification is performed */
+    private final boolean      performClassification;
+
+    /** List of attributes used as features for linear regression task */
+    private final String[]     featureAttributes;
+
+    /** Attribute which class will be predicted */
+    private final String       targetAttribute;
+
+    /** Metrics to compute */
+    private final Set<UtilityMetric> metrics;
+
+    /**
+     * Creates a new instance.
+     * Creates a list of categorical and continuous attributes using the dataConfig.
+     *
+     * @param dataConfig
+     * @param statisticsConfig configuration of classification, may be null
+     * @param metrics metrics to compute
+     */
+    public StatisticsContext(DataConfig dataConfig, StatisticsConfig statisticsConfig, List<UtilityMetric> metrics) {
+        List<String> categoricalAttributes = new ArrayList<String>();
+        List<String> continuousAttributes = new ArrayList<String>();
+        for (AttributeConfig attributeConfig : dataConfig.getAttributeConfigs()) {
+            switch (attributeConfig.getDataType()) {
+            case "categorical":
+                categoricalAttributes.add(attributeConfig.getName());
+                break;
+            case "continuous":
+                continuousAttributes.add(attributeConfig.getName());
+                break;
+            default:
+                throw new IllegalStateException("Unsupported data type: " + attributeConfig.getDataType());
+            }
+        }
+        this.categoricalAttributes = Collections.unmodifiableList(categoricalAttributes);
+        this.continuousAttributes = Collections.unmodifiableList(continuousAttributes);
+        Set<UtilityMetric> selected = EnumSet.noneOf(UtilityMetric.class);
+        selected.addAll(metrics);
+        this.metrics = Collections.unmodifiableSet(selected);
+        this.performClassification = statisticsConfig != null && this.metrics.contains(UtilityMetric.CLASSIFICATION_ACCURACY);
+        this.featureAttributes = statisticsConfig != null ? statisticsConfig.getFeatureAttributes() : null;
+        this.targetAttribute = statisticsConfig != null ? statisticsConfig.getTargetAttribute() : null;
+    }
+
+    /**
+     * Returns the categorical attributes
+     */
+    List<String> getCategoricalAttributes() {
+        return categoricalAttributes;
+    }
+
+    /**
+     * Returns the continuous attributes
+     */
+    List<String> getContinuousAttributes() {
+        return continuousAttributes;
+    }
+
+    /**
+     * Returns the metrics to compute, in the order of their columns
+     */
+    Set<UtilityMetric> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns whether classification is performed
+     */
+    public boolean isClassificationPerformed() {
+        return performClassification;
+    }
+
+    /**
+     * Returns the attributes used as features for classification
+     */
+    String[] getFeatureAttributes() {
+        return featureAttributes;
+    }
+
+    /**
+     * Returns the attribute which class will be predicted
+     */
+    String getTargetAttribute() {
+        return targetAttribute;
+    }
+}
@@ -1,20 +1,21 @@
 package org.bihmi.phantomanonymization.phantom;
 
 import java.util.List;
+import java.util.Map;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.HashSet;
+import java.util.Set;
 
-import org.bihmi.anonymization.config.AttributeConfig;
-import org.bihmi.anonymization.config.DataConfig;
-import org.bihmi.phantomanonymization.config.StatisticsConfig;
 import org.deidentifier.arx.ARXClassificationConfiguration;
 import org.deidentifier.arx.Data;
 import org.deidentifier.arx.DataHandle;
 import org.deidentifier.arx.aggregates.StatisticsBuilder;
+import org.deidentifier.arx.aggregates.StatisticsEquivalenceClasses;
+import org.deidentifier.arx.aggregates.StatisticsQuality;
 
 public class StatisticsWrapper {
 
@@ -45,174 +46,291 @@ public class StatisticsWrapper {
 	/** JSON encoded location and limits of numerical attributes */
 	private final String locationAndLimits;
 	
-	/** JSON encoded location and limits of numerical attributes */
-    private final double classificationAccuracy;
-	
-	/** Flag indicating initialization */
-	private static boolean isInitialized = false;
-	
-	/** List of categorical attributes */
-	private static List<String> categoricalAttributes;
-	
-	/** List of continuous attributes */
-    private static List<String> continuousAttributes;
-    
-    /** Flag indicating whether classification is performed */
-    private static boolean performClassification = false;
+	/** Accuracy of classification performed on the anonymized data, -1 if not computed */
+    private volatile double classificationAccuracy;
     
-    /** List of attributes used as features for linear regression task */
-    private static String[] featureAttributes;
-    
-    /** Attribute which class will be predicted  */
-    private static String targetAttribute;
-	
+    /** Metrics which are computed and reported, other values are not available */
+    private final Set<UtilityMetric> metrics;
 	
-    /**
-     * Static method to initialize the class. Must be called before creating instances.
-     * Creates a list of categorical and continuous attributes using the dataConfig.
-     *
-     * @param dataConfig 
-     * @param statisticsConfig
-     */
-    public static void initialize(DataConfig dataConfig, StatisticsConfig statisticsConfig) {
-        if (!isInitialized) {
-            List<String> categoricalAttributes = new ArrayList<String>();
-            List<String> continuousAttributes = new ArrayList<String>();
-            List<AttributeConfig> attributeConfigs = dataConfig.getAttributeConfigs();
-            for (AttributeConfig attributeConfig : attributeConfigs) {
-                switch (attributeConfig.getDataType()) {
-                case "categorical":
-                    categoricalAttributes.add(attributeConfig.getName());
-                    break;
-                case "continuous":
-                    continuousAttributes.add(attributeConfig.getName());
-                    break;
-                default:
-                    throw new IllegalStateException("Unsupported data type: " + attributeConfig.getDataType());
-                }
-            }
-            StatisticsWrapper.categoricalAttributes = categoricalAttributes;
-            StatisticsWrapper.continuousAttributes = continuousAttributes;
-            isInitialized = true;
-            
-            if (statisticsConfig != null) {
-                StatisticsWrapper.performClassification = true;
-                StatisticsWrapper.featureAttributes = statisticsConfig.getFeatureAttributes();
-                StatisticsWrapper.targetAttribute = statisticsConfig.getTargetAttribute();
-            }
-        }
-    }
-    
+	/**
+	 * Constructor used by the PAAssessment class to create the object using ARX StatisticsBuilder.
+	 * 
+	 * @param context
+	 * @param dataRaw
+	 * @param handleAnonymized
+	 */
+	public StatisticsWrapper(StatisticsContext context, Data dataRaw, DataHandle handleAnonymized){
+	    this(context, dataRaw, handleAnonymized, true);
+	}
 	
 	/**
 	 * Constructor used by the PAAssessment class to create the object using ARX StatisticsBuilder.
 	 * 
+	 * @param context
 	 * @param dataRaw
 	 * @param handleAnonymized
+	 * @param classify whether to perform classification, otherwise it may be performed later with performClassification()
 	 */
-	public StatisticsWrapper(Data dataRaw, DataHandle handleAnonymized){
-	    if (!isInitialized) {
-            throw new IllegalStateException("StatisticsWrapper is not initialized. Call initialize() first.");
-        }
+	public StatisticsWrapper(StatisticsContext context, Data dataRaw, DataHandle handleAnonymized, boolean classify){
+	    
+	    // Each of these statistics is computed on every call, so they are retrieved only once and only if needed
+	    this.metrics = context.getMetrics();
 	    StatisticsBuilder statistics = handleAnonymized.getStatistics();
-		this.granularity = statistics.getQualityStatistics().getGranularity().getArithmeticMean();
-		this.granularityCategoricalAttributes = statistics.getQualityStatistics(new HashSet<String>(categoricalAttributes)).getGranularity().getArithmeticMean(); 
-		this.entropy = statistics.getQualityStatistics().getNonUniformEntropy().getArithmeticMean();
-		this.discernibility = statistics.getQualityStatistics().getDiscernibility().getValue();
-		this.maximalEquivalenceClassSize = statistics.getEquivalenceClassStatistics().getMaximalEquivalenceClassSize();
-		this.averageEquivalenceClassSize = statistics.getEquivalenceClassStatistics().getAverageEquivalenceClassSize();
-		this.minimalEquivalenceClassSize = statistics.getEquivalenceClassStatistics().getMinimalEquivalenceClassSize();
-		this.numberOfSuppressedRecords = statistics.getEquivalenceClassStatistics().getNumberOfSuppressedRecords();
-		DataHandle handleRaw = dataRaw.getHandle();
-		this.locationAndLimits = getLocationAndLimits(handleRaw, handleAnonymized);
-		this.classificationAccuracy = StatisticsWrapper.performClassification ? performClassification(statistics) : -1d;
+	    StatisticsQuality quality = isSelected(UtilityMetric.GRANULARITY, UtilityMetric.ENTROPY, UtilityMetric.DISCERNIBILITY) ? statistics.getQualityStatistics() : null;
+	    StatisticsEquivalenceClasses classes = isSelected(UtilityMetric.MAXIMAL_EQUIVALENCE_CLASS_SIZE, UtilityMetric.AVERAGE_EQUIVALENCE_CLASS_SIZE,
+	                                                      UtilityMetric.MINIMAL_EQUIVALENCE_CLASS_SIZE, UtilityMetric.NUMBER_OF_SUPPRESSED_RECORDS) ? statistics.getEquivalenceClassStatistics() : null;
+		this.granularity = isSelected(UtilityMetric.GRANULARITY) ? quality.getGranularity().getArithmeticMean() : Double.NaN;
+		this.granularityCategoricalAttributes = isSelected(UtilityMetric.GRANULARITY_CATEGORICAL_ATTRIBUTES) ? statistics.getQualityStatistics(new HashSet<String>(context.getCategoricalAttributes())).getGranularity().getArithmeticMean() : Double.NaN; 
+		this.entropy = isSelected(UtilityMetric.ENTROPY) ? quality.getNonUniformEntropy().getArithmeticMean() : Double.NaN;
+		this.discernibility = isSelected(UtilityMetric.DISCERNIBILITY) ? quality.getDiscernibility().getValue() : Double.NaN;
+		this.maximalEquivalenceClassSize = isSelected(UtilityMetric.MAXIMAL_EQUIVALENCE_CLASS_SIZE) ? classes.getMaximalEquivalenceClassSize() : -1;
+		this.averageEquivalenceClassSize = isSelected(UtilityMetric.AVERAGE_EQUIVALENCE_CLASS_SIZE) ? classes.getAverageEquivalenceClassSize() : Double.NaN;
+		this.minimalEquivalenceClassSize = isSelected(UtilityMetric.MINIMAL_EQUIVALENCE_CLASS_SIZE) ? classes.getMinimalEquivalenceClassSize() : -1;
+		this.numberOfSuppressedRecords = isSelected(UtilityMetric.NUMBER_OF_SUPPRESSED_RECORDS) ? classes.getNumberOfSuppressedRecords() : -1;
+		this.locationAndLimits = isSelected(UtilityMetric.LOCATION_AND_LIMITS) ? getLocationAndLimits(context.getContinuousAttributes(), dataRaw.getHandle(), handleAnonymized) : "";
+		this.classificationAccuracy = context.isClassificationPerformed() && classify ? performClassification(context, statistics) : -1d;
 	}
+    
+    /**
+     * Performs the classification task on the anonymized data, if classification is performed. The handle must not be
+     * accessed by other threads concurrently.
+     * 
+     * @param context
+     * @param handleAnonymized
+     */
+    public void performClassification(StatisticsContext context, DataHandle handleAnonymized) {
+        if (context.isClassificationPerformed()) {
+            this.classificationAccuracy = performClassification(context, handleAnonymized.getStatistics());
+        }
+    }
 	
     /**
-     * Constructor used by the checkpoint class to create the object using Java properties
+     * Constructor used by the checkpoint class to create the object using Java properties.
+     * Metrics which have not been stored are not available.
      * 
+     * @param context
      * @param properties
      */
-    public StatisticsWrapper(Properties properties) {
-        this.granularity = Double.parseDouble(properties.getProperty("granularity"));
-        this.granularityCategoricalAttributes = Double.parseDouble(properties.getProperty("granularityCategoricalAttributes"));
-        this.entropy = Double.parseDouble(properties.getProperty("entropy"));
-        this.discernibility = Double.parseDouble(properties.getProperty("discernibility"));
-        this.maximalEquivalenceClassSize = Integer.parseInt(properties.getProperty("maximalEquivalenceClassSize"));
-        this.averageEquivalenceClassSize = Double.parseDouble(properties.getProperty("averageEquivalenceClassSize"));
-        this.minimalEquivalenceClassSize = Integer.parseInt(properties.getProperty("minimalEquivalenceClassSize"));
-        this.numberOfSuppressedRecords = Integer.parseInt(properties.getProperty("numberOfSuppressedRecords"));
-        this.locationAndLimits = properties.getProperty("locationAndLimits");
-        this.classificationAccuracy = Double.parseDouble(properties.getProperty("classificationAccuracy"));
+    public StatisticsWrapper(StatisticsContext context, Properties properties) {
+        this.metrics = context.getMetrics();
+        this.granularity = Double.parseDouble(properties.getProperty(UtilityMetric.GRANULARITY.getProperty(), "NaN"));
+        this.granularityCategoricalAttributes = Double.parseDouble(properties.getProperty(UtilityMetric.GRANULARITY_CATEGORICAL_ATTRIBUTES.getProperty(), "NaN"));
+        this.entropy = Double.parseDouble(properties.getProperty(UtilityMetric.ENTROPY.getProperty(), "NaN"));
+        this.discernibility = Double.parseDouble(properties.getProperty(UtilityMetric.DISCERNIBILITY.getProperty(), "NaN"));
+        this.maximalEquivalenceClassSize = Integer.parseInt(properties.getProperty(UtilityMetric.MAXIMAL_EQUIVALENCE_CLASS_SIZE.getProperty(), "-1"));
+        this.averageEquivalenceClassSize = Double.parseDouble(properties.getProperty(UtilityMetric.AVERAGE_EQUIVALENCE_CLASS_SIZE.getProperty(), "NaN"));
+        this.minimalEquivalenceClassSize = Integer.parseInt(properties.getProperty(UtilityMetric.MINIMAL_EQUIVALENCE_CLASS_SIZE.getProperty(), "-1"));
+        this.numberOfSuppressedRecords = Integer.parseInt(properties.getProperty(UtilityMetric.NUMBER_OF_SUPPRESSED_RECORDS.getProperty(), "-1"));
+        this.locationAndLimits = properties.getProperty(UtilityMetric.LOCATION_AND_LIMITS.getProperty(), "");
+        this.classificationAccuracy = Double.parseDouble(properties.getProperty(UtilityMetric.CLASSIFICATION_ACCURACY.getProperty(), "-1"));
+    }
+    
+    /**
+     * Returns whether any of the given metrics is selected
+     * 
+     * @param metrics
+     * @return
+     */
+    private boolean isSelected(UtilityMetric... metrics) {
+        for (UtilityMetric metric : metrics) {
+            if (this.metrics.contains(metric)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the formatted value of the given metric
+     * 
+     * @param metric
+     * @return
+     */
+    private String getValue(UtilityMetric metric) {
+        switch (metric) {
+        case GRANULARITY:
+            return formatDouble(granularity);
+        case GRANULARITY_CATEGORICAL_ATTRIBUTES:
+            return formatDouble(granularityCategoricalAttributes);
+        case ENTROPY:
+            return formatDouble(entropy);
+        case DISCERNIBILITY:
+            return formatDouble(discernibility);
+        case MAXIMAL_EQUIVALENCE_CLASS_SIZE:
+            return String.valueOf(maximalEquivalenceClassSize);
+        case AVERAGE_EQUIVALENCE_CLASS_SIZE:
+            return formatDouble(averageEquivalenceClassSize);
+        case MINIMAL_EQUIVALENCE_CLASS_SIZE:
+            return String.valueOf(minimalEquivalenceClassSize);
+        case NUMBER_OF_SUPPRESSED_RECORDS:
+            return String.valueOf(numberOfSuppressedRecords);
+        case LOCATION_AND_LIMITS:
+            return locationAndLimits;
+        case CLASSIFICATION_ACCURACY:
+            return formatDouble(classificationAccuracy);
+        default:
+            throw new IllegalStateException("Unknown metric: " + metric);
+        }
     }
 
     /**
-     * Retrieves mean, median, minimum, and maximum values for a given attribute.
+     * Retrieves mean, median, minimum, and maximum values for all continuous attributes in a single pass over the
+     * given handle. Values are collected in primitive arrays, each distinct label is parsed only once and medians
+     * are determined by selection instead of sorting.
      * 
+     * @param continuousAttributes continuous attributes
      * @param handle DataHandle object providing data access.
-     * @param attributeName The name of the attribute to analyze.
-     * @return An array containing mean, median, min, and max values.
+     * @return For each continuous attribute, an array containing min, max, mean and median values.
      */
-    private static double[] getStatistics(DataHandle handle, String attributeName) {
-        int liveRows = 0;
-        double sum = 0.0;
-        double min = Double.NaN;
-        double max = Double.NaN;
-        ArrayList<Double> values = new ArrayList<>();
-        int columnIndex = handle.getColumnIndexOf(attributeName);
-
-        // Calculate min, max, and mean
-        for (int row = 0; row < handle.getNumRows(); row++) {
-            if (!handle.isSuppressed(row) && !handle.getValue(row, columnIndex).equals("*") ) {
-                double value = Double.valueOf(handle.getValue(row, columnIndex));
-                values.add(value);
+    private static double[][] getStatistics(List<String> continuousAttributes, DataHandle handle) {
+        
+        // Prepare
+        int attributes = continuousAttributes.size();
+        int numRows = handle.getNumRows();
+        int[] columns = new int[attributes];
+        List<Map<String, Double>> parsed = new ArrayList<>();
+        double[][] values = new double[attributes][numRows];
+        int[] liveRows = new int[attributes];
+        for (int i = 0; i < attributes; i++) {
+            columns[i] = handle.getColumnIndexOf(continuousAttributes.get(i));
+            parsed.add(new HashMap<>());
+        }
+        
+        // Collect values
+        for (int row = 0; row < numRows; row++) {
+            if (handle.isSuppressed(row)) {
+                continue;
+            }
+            for (int i = 0; i < attributes; i++) {
+                String label = handle.getValue(row, columns[i]);
+                if (!label.equals("*")) {
+                    Double value = parsed.get(i).get(label);
+                    if (value == null) {
+                        value = Double.valueOf(label);
+                        parsed.get(i).put(label, value);
+                    }
+                    values[i][liveRows[i]++] = value;
+                }
+            }
+        }
+        
+        // Calculate min, max, mean and median
+        double[][] result = new double[attributes][];
+        for (int i = 0; i < attributes; i++) {
+            int count = liveRows[i];
+            double sum = 0.0;
+            double min = Double.NaN;
+            double max = Double.NaN;
+            for (int j = 0; j < count; j++) {
+                double value = values[i][j];
                 sum += value;
                 if (Double.isNaN(min) || value < min) min = value;
                 if (Double.isNaN(max) || value > max) max = value;
-                liveRows++;
             }
+            double mean = (count > 0) ? sum / count : Double.NaN;
+            double median = Double.NaN;
+            if (count > 0) {
+                int middle = count / 2;
+                double upper = select(values[i], count, middle);
+                if (count % 2 == 0) {
+                    // After selection, all values left of the middle are not larger than the middle value
+                    double lower = values[i][0];
+                    for (int j = 1; j < middle; j++) {
+                        lower = Math.max(lower, values[i][j]);
+                    }
+                    median = (lower + upper) / 2.0;
+                } else {
+                    median = upper;
+                }
+            }
+            result[i] = new double[]{min, max, mean, median};
         }
 
-        double mean = (liveRows > 0) ? sum / liveRows : Double.NaN;
-
-        // Calculating median
-        double median = Double.NaN;
-        if (liveRows > 0) {
-            Collections.sort(values);
-            int middle = values.size() / 2;
-            if (values.size() % 2 == 0) {
-                median = (values.get(middle - 1) + values.get(middle)) / 2.0;
+        return result;
+    }
+    
+    /**
+     * Returns the k-th smallest of the first n values using quickselect. Partially reorders the values, so that all
+     * values left of position k are not larger and all values right of position k are not smaller than the result.
+     * 
+     * @param values
+     * @param n
+     * @param k
+     * @return
+     */
+    private static double select(double[] values, int n, int k) {
+        int left = 0;
+        int right = n - 1;
+        while (left < right) {
+            
+            // Median of three as pivot
+            int middle = (left + right) >>> 1;
+            if (values[middle] < values[left]) swap(values, middle, left);
+            if (values[right] < values[left]) swap(values, right, left);
+            if (values[right] < values[middle]) swap(values, right, middle);
+            double pivot = values[middle];
+            
+            // Partition
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            
+            // Continue with the part containing k
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
             } else {
-                median = values.get(middle);
+                break;
             }
         }
-
-        return new double[]{min, max, mean, median};
+        return values[k];
+    }
+    
+    /**
+     * Swaps two values
+     */
+    private static void swap(double[] values, int i, int j) {
+        double temp = values[i];
+        values[i] = values[j];
+        values[j] = temp;
     }
     
     /**
      * Generates a JSON representation of statistical information for numeric attributes in the provided data handle.
      * The statistics include minimum, maximum, arithmetic mean, median, and standard deviation.
      *
+     * @param continuousAttributes  continuous attributes
      * @param handleRaw             data handle 
      * @param handleAnonymized      statistics builder
      * @return A JSON-formatted string representing statistical information for numeric attributes.
      */
-    private static String getLocationAndLimits(DataHandle handleRaw, DataHandle handleAnonymized) {
+    private static String getLocationAndLimits(List<String> continuousAttributes, DataHandle handleRaw, DataHandle handleAnonymized) {
 
         StringBuilder builder = new StringBuilder("{");
         boolean emptyResult = true;
 
-        for (String attributeName : continuousAttributes) {
+        double[][] statisticsRaw = getStatistics(continuousAttributes, handleRaw);
+        double[][] statisticsAnonymized = getStatistics(continuousAttributes, handleAnonymized);
+        for (int i = 0; i < continuousAttributes.size(); i++) {
 
+            String attributeName = continuousAttributes.get(i);
             if (emptyResult) {
                 emptyResult = false;
             } else {
                 builder.append(",");
             }
 
-            double[] statsRaw = getStatistics(handleRaw, attributeName);
-            double[] statsAnonymized = getStatistics(handleAnonymized, attributeName);
+            double[] statsRaw = statisticsRaw[i];
+            double[] statsAnonymized = statisticsAnonymized[i];
             
             builder.append("\"");
             builder.append(attributeName);
@@ -244,12 +362,13 @@ public class StatisticsWrapper {
     /**
      * Performs classification task using linear regression.
      * 
+     * @param context
      * @param statistics
      * @return
      */
-    private Double performClassification(StatisticsBuilder statistics) {
+    private Double performClassification(StatisticsContext context, StatisticsBuilder statistics) {
         try {
-            return statistics.getClassificationPerformance(StatisticsWrapper.featureAttributes, StatisticsWrapper.targetAttribute, ARXClassificationConfiguration.createLogisticRegression()).getAccuracy();
+            return statistics.getClassificationPerformance(context.getFeatureAttributes(), context.getTargetAttribute(), ARXClassificationConfiguration.createLogisticRegression()).getAccuracy();
         } catch (ParseException e) {
             throw new IllegalStateException("Failed to perfrom classification", e);
         }
@@ -262,16 +381,9 @@ public class StatisticsWrapper {
      */
     public Properties toProperties() {
         Properties properties = new Properties();
-        properties.setProperty("granularity", formatDouble(granularity));
-        properties.setProperty("granularityCategoricalAttributes", formatDouble(granularityCategoricalAttributes));
-        properties.setProperty("entropy", formatDouble(entropy));
-        properties.setProperty("discernibility", formatDouble(discernibility));
-        properties.setProperty("maximalEquivalenceClassSize", String.valueOf(maximalEquivalenceClassSize));
-        properties.setProperty("averageEquivalenceClassSize", formatDouble(averageEquivalenceClassSize));
-        properties.setProperty("minimalEquivalenceClassSize", String.valueOf(minimalEquivalenceClassSize));
-        properties.setProperty("numberOfSuppressedRecords", String.valueOf(numberOfSuppressedRecords));
-        properties.setProperty("locationAndLimits", locationAndLimits);
-        properties.setProperty("classificationAccuracy", formatDouble(classificationAccuracy));
+        for (UtilityMetric metric : metrics) {
+            properties.setProperty(metric.getProperty(), getValue(metric));
+        }
         return properties;
     }
 
@@ -289,17 +401,20 @@ public class StatisticsWrapper {
         }
     }
     
+    /**
+     * Returns the values of the selected metrics separated by semicolons, in the order of the log header
+     */
     @Override
     public String toString() {
-        return formatDouble(granularity) + ";" +
-               formatDouble(granularityCategoricalAttributes) + ";" +
-               formatDouble(entropy) + ";" +
-               formatDouble(discernibility) + ";" +
-               maximalEquivalenceClassSize + ";" +
-               formatDouble(averageEquivalenceClassSize) + ";" +
-               minimalEquivalenceClassSize + ";" +
-               numberOfSuppressedRecords + ";" +
-               locationAndLimits+ ";" +
-               formatDouble(classificationAccuracy);
+        StringBuilder builder = new StringBuilder();
+        boolean first = true;
+        for (UtilityMetric metric : metrics) {
+            if (!first) {
+                builder.append(";");
+            }
+            builder.append(getValue(metric));
+            first = false;
+        }
+        return builder.toString();
     }
 }
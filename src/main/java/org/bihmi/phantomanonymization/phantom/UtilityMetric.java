@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+/**
+ * Utility metrics computed for anonymized test samples
+ */
+public enum UtilityMetric {
+    /** Granularity */
+    GRANULARITY("Granularity", "granularity"),
+    /** Granularity of categorical attributes */
+    GRANULARITY_CATEGORICAL_ATTRIBUTES("GranularityCategoricalAttributes", "granularityCategoricalAttributes"),
+    /** Non-uniform entropy */
+    ENTROPY("Entropy", "entropy"),
+    /** Discernibility */
+    DISCERNIBILITY("Discernibility", "discernibility"),
+    /** Size of the largest equivalence class */
+    MAXIMAL_EQUIVALENCE_CLASS_SIZE("MaximalEquivalenceClassSize", "maximalEquivalenceClassSize"),
+    /** Average size of equivalence classes */
+    AVERAGE_EQUIVALENCE_CLASS_SIZE("AverageEquivalenceClassSize", "averageEquivalenceClassSize"),
+    /** Size of the smallest equivalence class */
+    MINIMAL_EQUIVALENCE_CLASS_SIZE("MinimalEquivalenceClassSize", "minimalEquivalenceClassSize"),
+    /** Number of suppressed records */
+    NUMBER_OF_SUPPRESSED_RECORDS("NumberOfSuppressedRecords", "numberOfSuppressedRecords"),
+    /** Location and limits of continuous attributes in raw and anonymized data */
+    LOCATION_AND_LIMITS("LocationAndLimits", "locationAndLimits"),
+    /** Accuracy of a classifier trained on the anonymized data */
+    CLASSIFICATION_ACCURACY("ClassificationAccuracy", "classificationAccuracy");
+
+    /** Name of the column in log files */
+    private final String column;
+    /** Name of the property in checkpoints */
+    private final String property;
+
+    /**
+     * Creates a new instance
+     * @param column
+     * @param property
+     */
+    private UtilityMetric(String column, String property) {
+        this.column = column;
+        this.property = property;
+    }
+
+    /**
+     * Returns the name of the column in log files
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the name of the property in checkpoints
+     */
+    public String getProperty() {
+        return property;
+    }
+}
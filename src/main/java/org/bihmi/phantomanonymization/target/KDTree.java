@@ -0,0 +1,279 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.target;
+
+import java.util.Arrays;
+
+/**
+ * KD-tree for k-nearest-neighbour queries among a fixed set of points. The tree is stored implicitly in a
+ * permutation of the points: each range of the permutation is split at its middle along the dimension with the
+ * largest spread, until ranges fit into a leaf. Instances are not modified by queries, so queries can be executed
+ * in parallel.
+ */
+class KDTree {
+
+    /** Maximal number of points in a leaf */
+    private static final int LEAF_SIZE = 16;
+
+    /** Coordinates, point by point */
+    private final double[] points;
+    /** Number of dimensions */
+    private final int      dimensions;
+    /** Number of points */
+    private final int      size;
+    /** Points, ordered such that each range is split at its middle */
+    private final int[]    order;
+    /** Split dimension of each range, stored at the position of its middle */
+    private final int[]    splits;
+    /** Split value of each range, stored at the position of its middle */
+    private final double[] thresholds;
+
+    /**
+     * Creates a new instance
+     * @param points coordinates, point by point
+     * @param dimensions number of dimensions
+     */
+    KDTree(double[] points, int dimensions) {
+
+        // Check
+        if (dimensions <= 0 || points.length % dimensions != 0) {
+            throw new IllegalArgumentException("Invalid number of dimensions: " + dimensions);
+        }
+
+        // Prepare
+        this.points = points;
+        this.dimensions = dimensions;
+        this.size = points.length / dimensions;
+        this.order = new int[size];
+        this.splits = new int[size];
+        this.thresholds = new double[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        // Build
+        build(0, size);
+    }
+
+    /**
+     * Returns the number of points
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the nearest neighbours of a point of the tree, excluding the point itself
+     * @param point index of the point
+     * @param neighbors receives the indices of the neighbours, its length is the number of neighbours
+     * @param distances receives the distances to the neighbours
+     * @return distance to the most distant neighbour
+     */
+    double query(int point, int[] neighbors, double[] distances) {
+
+        // Prepare max-heap of squared distances
+        Arrays.fill(neighbors, -1);
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+
+        // Search
+        search(0, size, point, neighbors, distances);
+
+        // Done
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = Math.sqrt(distances[i]);
+        }
+        return distances[0];
+    }
+
+    /**
+     * Builds the tree for the given range
+     * @param start
+     * @param end
+     */
+    private void build(int start, int end) {
+
+        // Leaf
+        if (end - start <= LEAF_SIZE) {
+            return;
+        }
+
+        // Find dimension with largest spread
+        int dimension = 0;
+        double spread = -1d;
+        for (int d = 0; d < dimensions; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double value = getCoordinate(order[i], d);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > spread) {
+                spread = max - min;
+                dimension = d;
+            }
+        }
+
+        // Split
+        int middle = (start + end) >>> 1;
+        select(start, end - 1, middle, dimension);
+        splits[middle] = dimension;
+        thresholds[middle] = getCoordinate(order[middle], dimension);
+        build(start, middle);
+        build(middle, end);
+    }
+
+    /**
+     * Returns a coordinate of a point
+     * @param point
+     * @param dimension
+     * @return
+     */
+    private double getCoordinate(int point, int dimension) {
+        return points[point * dimensions + dimension];
+    }
+
+    /**
+     * Returns the squared euclidean distance between two points
+     * @param first
+     * @param second
+     * @return
+     */
+    private double getSquaredDistance(int first, int second) {
+        int offset1 = first * dimensions;
+        int offset2 = second * dimensions;
+        double sum = 0d;
+        for (int d = 0; d < dimensions; d++) {
+            double delta = points[offset1 + d] - points[offset2 + d];
+            sum += delta * delta;
+        }
+        return sum;
+    }
+
+    /**
+     * Searches the given range for neighbours closer than the most distant neighbour found so far
+     * @param start
+     * @param end
+     * @param point
+     * @param neighbors
+     * @param distances
+     */
+    private void search(int start, int end, int point, int[] neighbors, double[] distances) {
+
+        // Leaf
+        if (end - start <= LEAF_SIZE) {
+            for (int i = start; i < end; i++) {
+                int candidate = order[i];
+                if (candidate != point) {
+                    double distance = getSquaredDistance(point, candidate);
+                    if (distance < distances[0]) {
+                        neighbors[0] = candidate;
+                        distances[0] = distance;
+                        siftDown(neighbors, distances);
+                    }
+                }
+            }
+            return;
+        }
+
+        // Search the side containing the point first, the other one only if it may contain closer points
+        int middle = (start + end) >>> 1;
+        double delta = getCoordinate(point, splits[middle]) - thresholds[middle];
+        if (delta < 0d) {
+            search(start, middle, point, neighbors, distances);
+            if (delta * delta < distances[0]) {
+                search(middle, end, point, neighbors, distances);
+            }
+        } else {
+            search(middle, end, point, neighbors, distances);
+            if (delta * delta < distances[0]) {
+                search(start, middle, point, neighbors, distances);
+            }
+        }
+    }
+
+    /**
+     * Moves the points in the given range, such that the point at position k is the one that would be there if
+     * the range were sorted by the given dimension. Uses a three-way partitioning, as coordinates of categorical
+     * attributes contain many duplicates.
+     * @param left first position
+     * @param right last position
+     * @param k
+     * @param dimension
+     */
+    private void select(int left, int right, int k, int dimension) {
+        while (left < right) {
+            double pivot = getCoordinate(order[(left + right) >>> 1], dimension);
+            int lower = left;
+            int upper = right;
+            int i = left;
+            while (i <= upper) {
+                double value = getCoordinate(order[i], dimension);
+                if (value < pivot) {
+                    swap(order, lower++, i++);
+                } else if (value > pivot) {
+                    swap(order, i, upper--);
+                } else {
+                    i++;
+                }
+            }
+            if (k < lower) {
+                right = lower - 1;
+            } else if (k > upper) {
+                left = upper + 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Restores the max-heap property after the root has been replaced
+     * @param neighbors
+     * @param distances
+     */
+    private static void siftDown(int[] neighbors, double[] distances) {
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= distances.length) {
+                return;
+            }
+            if (child + 1 < distances.length && distances[child + 1] > distances[child]) {
+                child++;
+            }
+            if (distances[position] >= distances[child]) {
+                return;
+            }
+            double distance = distances[position];
+            distances[position] = distances[child];
+            distances[child] = distance;
+            swap(neighbors, position, child);
+            position = child;
+        }
+    }
+
+    /**
+     * Swaps two entries
+     * @param array
+     * @param first
+     * @param second
+     */
+    private static void swap(int[] array, int first, int second) {
+        int temp = array[first];
+        array[first] = array[second];
+        array[second] = temp;
+    }
+}
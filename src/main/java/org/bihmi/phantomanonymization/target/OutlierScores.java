@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.target;
+
+import java.util.stream.IntStream;
+
+/**
+ * Outlier scores based on the k nearest neighbours of records. Neighbours are queried in parallel.
+ */
+class OutlierScores {
+
+    /** Added to mean reachability distances, so that densities of duplicates are large but finite */
+    private static final double EPSILON = 1e-10;
+
+    /**
+     * Returns the distance of each point to its k-th nearest neighbour
+     * @param tree
+     * @param k number of neighbours
+     * @return
+     */
+    static double[] getKnnDistances(KDTree tree, int k) {
+
+        // Check
+        checkNeighbors(tree, k);
+
+        // Query
+        double[] scores = new double[tree.size()];
+        IntStream.range(0, scores.length).parallel().forEach(point -> {
+            scores[point] = tree.query(point, new int[k], new double[k]);
+        });
+
+        // Done
+        return scores;
+    }
+
+    /**
+     * Returns the local outlier factor of each point, using exactly k neighbours per point. As in scikit-learn,
+     * densities are the inverse of the mean reachability distance plus a small constant. Points within groups of more
+     * than k duplicates thus get a factor of 1 and points next to such groups a large but finite factor.
+     * @param tree
+     * @param k number of neighbours
+     * @return
+     */
+    static double[] getLocalOutlierFactors(KDTree tree, int k) {
+
+        // Check
+        checkNeighbors(tree, k);
+
+        // Query
+        int size = tree.size();
+        int[] neighbors = new int[size * k];
+        double[] distances = new double[size * k];
+        double[] kDistances = new double[size];
+        IntStream.range(0, size).parallel().forEach(point -> {
+            int[] _neighbors = new int[k];
+            double[] _distances = new double[k];
+            kDistances[point] = tree.query(point, _neighbors, _distances);
+            System.arraycopy(_neighbors, 0, neighbors, point * k, k);
+            System.arraycopy(_distances, 0, distances, point * k, k);
+        });
+
+        // Calculate local reachability densities
+        double[] densities = new double[size];
+        IntStream.range(0, size).parallel().forEach(point -> {
+            double sum = 0d;
+            for (int i = point * k; i < (point + 1) * k; i++) {
+                sum += Math.max(kDistances[neighbors[i]], distances[i]);
+            }
+            densities[point] = 1d / (sum / k + EPSILON);
+        });
+
+        // Calculate local outlier factors
+        double[] scores = new double[size];
+        IntStream.range(0, size).parallel().forEach(point -> {
+            double sum = 0d;
+            for (int i = point * k; i < (point + 1) * k; i++) {
+                sum += densities[neighbors[i]];
+            }
+            scores[point] = sum / (k * densities[point]);
+        });
+
+        // Done
+        return scores;
+    }
+
+    /**
+     * Checks the number of neighbours
+     * @param tree
+     * @param k
+     */
+    private static void checkNeighbors(KDTree tree, int k) {
+        if (k <= 0 || k >= tree.size()) {
+            throw new IllegalArgumentException("Number of neighbors must be positive and less than the number of records: " + k);
+        }
+    }
+}
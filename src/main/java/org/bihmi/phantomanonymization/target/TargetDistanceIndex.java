@@ -0,0 +1,211 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.target;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.bihmi.anonymization.config.AttributeConfig;
+import org.bihmi.anonymization.config.DataConfig;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Distances of all records of a dataset to its centroid. Indices are stored in a binary file next to the data file,
+ * named after a fingerprint of the data config and the data file, so that distances are only calculated once per
+ * data config. Instances are immutable and can be shared between threads.
+ */
+@Slf4j
+public class TargetDistanceIndex {
+
+    /** Identifies index files */
+    private static final int    MAGIC     = 0x54444958;
+    /** File extension */
+    private static final String EXTENSION = ".distances";
+    /** FNV-1a offset basis */
+    private static final long   OFFSET    = 0xcbf29ce484222325L;
+    /** FNV-1a prime */
+    private static final long   PRIME     = 0x100000001b3L;
+
+    /** Distances for each record */
+    private final double[] distances;
+    /** Minimum distance */
+    private final double   minDistance;
+    /** Maximum distance */
+    private final double   maxDistance;
+
+    /**
+     * Creates a new instance
+     * @param distances
+     * @param minDistance
+     * @param maxDistance
+     */
+    TargetDistanceIndex(double[] distances, double minDistance, double maxDistance) {
+        this.distances = distances;
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Returns the fingerprint of the data config and the data file it references. It covers the path, size and
+     * modification time of the file as well as the attributes and their types.
+     * @param dataConfig
+     * @return
+     */
+    public static long getFingerprint(DataConfig dataConfig) {
+        File file = new File(dataConfig.getDataCsvFile());
+        StringBuilder builder = new StringBuilder();
+        builder.append(file.getAbsolutePath()).append(';').append(file.length()).append(';').append(file.lastModified());
+        for (AttributeConfig attributeConfig : dataConfig.getAttributeConfigs()) {
+            builder.append(';').append(attributeConfig.getName());
+            builder.append(';').append(attributeConfig.getDataType());
+            builder.append(';').append(attributeConfig.getType());
+            builder.append(';').append(attributeConfig.getDateFormat());
+            builder.append(';').append(attributeConfig.getInclude());
+        }
+        long hash = OFFSET;
+        for (byte value : builder.toString().getBytes(StandardCharsets.UTF_8)) {
+            hash ^= value & 0xff;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the index file of the data config
+     * @param dataConfig
+     * @return
+     */
+    public static File getFile(DataConfig dataConfig) {
+        return new File(dataConfig.getDataCsvFile() + "." + Long.toHexString(getFingerprint(dataConfig)) + EXTENSION);
+    }
+
+    /**
+     * Loads the index of the data config. Returns null if there is no index file or if it cannot be read.
+     * @param dataConfig
+     * @return
+     */
+    public static TargetDistanceIndex load(DataConfig dataConfig) {
+
+        // Check
+        File file = getFile(dataConfig);
+        if (!file.exists()) {
+            return null;
+        }
+
+        // Load
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readLong() != getFingerprint(dataConfig)) {
+                log.warn("Ignoring invalid target distance index: " + file);
+                return null;
+            }
+            double minDistance = input.readDouble();
+            double maxDistance = input.readDouble();
+            double[] distances = new double[input.readInt()];
+            for (int i = 0; i < distances.length; i++) {
+                distances[i] = input.readDouble();
+            }
+            return new TargetDistanceIndex(distances, minDistance, maxDistance);
+        } catch (IOException e) {
+            log.warn("Could not read target distance index: " + file + " " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the index for the data config. The file is written to a temporary file first and then moved, so that
+     * concurrent assessments never read partially written indices. Failures are logged, as the index can always
+     * be recalculated.
+     * @param dataConfig
+     */
+    public void save(DataConfig dataConfig) {
+
+        // Prepare
+        File file = getFile(dataConfig);
+        File temp = null;
+        try {
+
+            // Write
+            temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                output.writeInt(MAGIC);
+                output.writeLong(getFingerprint(dataConfig));
+                output.writeDouble(minDistance);
+                output.writeDouble(maxDistance);
+                output.writeInt(distances.length);
+                for (double distance : distances) {
+                    output.writeDouble(distance);
+                }
+            }
+
+            // Move
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.warn("Could not save target distance index: " + file + " " + e);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of records
+     */
+    public int getNumRows() {
+        return distances.length;
+    }
+
+    /**
+     * Returns the normalized distance in [0, 1] for the record at the given row compared to min and max
+     */
+    public double getNormalizedDistance(int row) {
+        return (distances[row] - minDistance) / (maxDistance - minDistance);
+    }
+
+    /**
+     * Returns the distances for each record
+     */
+    double[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * Returns the minimum distance
+     */
+    double getMinDistance() {
+        return minDistance;
+    }
+
+    /**
+     * Returns the maximum distance
+     */
+    double getMaxDistance() {
+        return maxDistance;
+    }
+}
@@ -14,9 +14,7 @@
 
 package org.bihmi.phantomanonymization.target;
 
-import org.apache.commons.lang.ArrayUtils;
-import org.apache.commons.math3.ml.distance.EuclideanDistance;
-import org.apache.commons.math3.util.Pair;
+import org.bihmi.anonymization.config.DataConfig;
 import org.deidentifier.arx.Data;
 import org.deidentifier.arx.DataHandle;
 import org.deidentifier.arx.DataType;
@@ -28,6 +26,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * Class for performing target selection
@@ -50,6 +49,10 @@ public class TargetSelection {
     protected double[]                               distances;
     /** Data to analyze*/
     protected final Data                             data;
+    /** Attributes used to calculate distances*/
+    protected final String[]                         attributes;
+    /** Flags indicating categorical attributes, null if the attributes have not been analyzed*/
+    protected boolean[]                              categorical;
 
     /**
      * Creates a new instance, using the QIs from the provided file
@@ -61,22 +64,7 @@ public class TargetSelection {
         // Prepare
         this.data = data;
         DataHandle handle = data.getHandle();
-        Set<String> _attributes = handle.getDefinition().getQuasiIdentifyingAttributes();
-
-        // Check
-        if (_attributes.size() == 0){
-            throw new IllegalArgumentException("Distances will only calculated on QIs but none were defined.");
-        }
-
-        // Collect indices and variable names
-        String[] attributes = new String[_attributes.size()];
-        int index = 0;
-        for (int column = 0; column < handle.getNumColumns(); column++) {
-            String attribute = handle.getAttributeName(column);
-            if (_attributes.contains(attribute)) {
-                attributes[index++] = attribute;
-            }
-        }
+        this.attributes = getQuasiIdentifiers(handle);
         
         // Perform analysis
         analyzeDataset(handle, attributes);
@@ -105,9 +93,52 @@ public class TargetSelection {
         }
         
         // Perform analysis
+        this.attributes = _attributes;
         analyzeDataset(handle, _attributes);
     }
 
+    /**
+     * Creates a new instance, using the distances from the given index
+     * @param data
+     * @param index
+     */
+    public TargetSelection(Data data, TargetDistanceIndex index) {
+        
+        // Check
+        if (index.getNumRows() != data.getHandle().getNumRows()) {
+            throw new IllegalArgumentException("Distance index does not match the number of records: " + index.getNumRows());
+        }
+        
+        // Prepare
+        this.data = data;
+        this.attributes = getQuasiIdentifiers(data.getHandle());
+        this.distances = index.getDistances();
+        this.minDistance = index.getMinDistance();
+        this.maxDistance = index.getMaxDistance();
+    }
+
+    /**
+     * Returns an instance for the data of the given config, using the QIs. Distances are loaded from the index file
+     * of the data config if it exists, otherwise they are calculated and stored in a new index file.
+     * @param dataConfig
+     * @param data
+     * @return
+     * @throws ParseException
+     */
+    public static TargetSelection getInstance(DataConfig dataConfig, Data data) throws ParseException {
+        
+        // Load
+        TargetDistanceIndex index = TargetDistanceIndex.load(dataConfig);
+        if (index != null && index.getNumRows() == data.getHandle().getNumRows()) {
+            return new TargetSelection(data, index);
+        }
+        
+        // Calculate and store
+        TargetSelection targetSelection = new TargetSelection(data);
+        targetSelection.getDistanceIndex().save(dataConfig);
+        return targetSelection;
+    }
+
     /**
      * Returns average targets
      * @param numTargets
@@ -117,6 +148,13 @@ public class TargetSelection {
         return getTopTargets(numTargets, TargetType.AVERAGE);
     }
 
+    /**
+     * Returns the distances of all records
+     */
+    public TargetDistanceIndex getDistanceIndex() {
+        return new TargetDistanceIndex(distances, minDistance, maxDistance);
+    }
+
     /**
      * Imports target IDs from a file
      */
@@ -177,15 +215,55 @@ public class TargetSelection {
         return samples;
     }
 
+    /**
+     * Returns the rows with the largest (outlier) or smallest (average) distances, ordered by rank. Ties are
+     * broken in favour of lower rows. Only the requested number of rows is kept in a bounded heap, so selecting
+     * a few targets needs a single pass and selecting all rows amounts to a heap sort.
+     * @param numTargets
+     * @param type
+     * @return
+     */
+    public int[] getRankedTargets(int numTargets, TargetType type) {
+        switch (type) {
+            case OUTLIER:
+                return rank(distances, numTargets, true);
+            case AVERAGE:
+                return rank(distances, numTargets, false);
+            default:
+                throw new IllegalArgumentException("Unknown target type");
+        }
+    }
+
+    /**
+     * Returns the rows ranked by the given type, which may also be based on the nearest neighbours of records. These
+     * are found with a KD-tree over the normalized values of the attributes, which is built for each call.
+     * @param numTargets
+     * @param type
+     * @param neighbors number of neighbours considered
+     * @return
+     * @throws ParseException
+     */
+    public int[] getRankedTargets(int numTargets, TargetType type, int neighbors) throws ParseException {
+        switch (type) {
+            case KNN_OUTLIER:
+                return rank(OutlierScores.getKnnDistances(getTree(), neighbors), numTargets, true);
+            case LOF_OUTLIER:
+                return rank(OutlierScores.getLocalOutlierFactors(getTree(), neighbors), numTargets, true);
+            default:
+                return getRankedTargets(numTargets, type);
+        }
+    }
+
     /**
      * Returns the specified targets
      * @param targetType
      * @param numberOfTargets
      * @param targetImportFile
+     * @param neighbors number of neighbours considered by outlier types based on nearest neighbours
      * @return
      * @throws ParseException
      */
-    public Set<Integer> getTargets(TargetType targetType, int numberOfTargets, String targetImportFile) throws ParseException {
+    public Set<Integer> getTargets(TargetType targetType, int numberOfTargets, String targetImportFile, int neighbors) throws ParseException {
         switch (targetType) {
             case RANDOM:
                 return getRandomTargets(numberOfTargets);
@@ -193,6 +271,9 @@ public class TargetSelection {
                 return getOutlierTargets(numberOfTargets);
             case AVERAGE:
                 return getAverageTargets(numberOfTargets);
+            case KNN_OUTLIER:
+            case LOF_OUTLIER:
+                return toSet(getRankedTargets(numberOfTargets, targetType, neighbors));
             case IMPORT:
                 return getImportedTargets(targetImportFile);
             default:
@@ -201,21 +282,59 @@ public class TargetSelection {
     }
 
     /**
-     * Analyze the dataset
+     * Analyze the dataset. Normalized values are extracted column by column once, after which the centroid and
+     * the distances are calculated in parallel.
      * @param dataset
      * @param attributes
      * @throws ParseException
      */
     private void analyzeDataset(DataHandle dataset, String[] attributes) throws ParseException {
         
+        // Analyze attributes
+        analyzeAttributes(dataset, attributes);
+
+        // Extract normalized columns, the handle is accessed by this thread only
+        int rows = dataset.getNumRows();
+        double[][] columns = new double[attributes.length][];
+        for (int index = 0; index < attributes.length; index++) {
+            columns[index] = getColumn(dataset, attributes[index], false);
+        }
+
+        // Calculate the centroid
+        double[] centroid = calculateCentroid(columns, categorical, rows);
+
+        // Calculate distances
+        distances = new double[rows];
+        IntStream.range(0, rows).parallel().forEach(row -> {
+            double sum = 0d;
+            for (int index = 0; index < columns.length; index++) {
+                double delta = centroid[index] - columns[index][row];
+                sum += delta * delta;
+            }
+            distances[row] = Math.sqrt(sum);
+        });
+
+        // Calculate min and max-distance
+        minDistance = Arrays.stream(distances).parallel().min().orElse(Double.MAX_VALUE);
+        maxDistance = Arrays.stream(distances).parallel().max().orElse(-Double.MAX_VALUE);
+    }
+
+    /**
+     * Analyzes the attributes, calculating their ranges or encodings
+     * @param dataset
+     * @param attributes
+     */
+    private void analyzeAttributes(DataHandle dataset, String[] attributes) {
+        
         // Calculate statistics
         Map<String, StatisticsSummary<?>> statistics = dataset.getStatistics().getSummaryStatistics(false);
-        List<Integer> categoricalIndicies = new ArrayList<>();
+        boolean[] categorical = new boolean[attributes.length];
         
         // For each attribute
-        for (String attribute : attributes) {
+        for (int index = 0; index < attributes.length; index++) {
 
             // Obtain statistics
+            String attribute = attributes[index];
             StatisticsSummary<?> summary = statistics.get(attribute);
             DataType<?> _type = dataset.getDefinition().getDataType(attribute);
             Class<?> _clazz = _type.getDescription().getWrappedClass();
@@ -243,7 +362,7 @@ public class TargetSelection {
             } else {
                 // Pre-encode categorical values considering the order
                 int column = dataset.getColumnIndexOf(attribute);
-                categoricalIndicies.add(ArrayUtils.indexOf(attributes, attribute));
+                categorical[index] = true;
                 StatisticsFrequencyDistribution frequencyDistribution = dataset.getStatistics().getFrequencyDistribution(column);
                 if (categoricalMappings.get(attribute) == null) {
                     categoricalMappings.put(attribute, new HashMap<>());
@@ -254,49 +373,26 @@ public class TargetSelection {
             }
         }
 
-        // Calculate the centroid
-        double[] centroid = calculateCentroid(dataset, attributes, categoricalIndicies);
-
-        // Calculate min and max-distance
-        minDistance = Double.MAX_VALUE;
-        maxDistance = -Double.MAX_VALUE;
-        distances = new double[dataset.getNumRows()];
-        for (int row = 0; row < dataset.getNumRows(); row++) {
-            double[] vector = getVector(dataset, row, attributes);
-            double distance = new EuclideanDistance().compute(centroid, vector);
-            distances[row] = distance;
-            minDistance = Math.min(minDistance, distance);
-            maxDistance = Math.max(maxDistance, distance);
-        }
+        // Done
+        this.categorical = categorical;
     }
 
     /**
-     * Calculates the controid
-     * @param dataset
-     * @param attributes
-     * @param categoricalIndicies
+     * Calculates the centroid
+     * @param columns normalized values of each attribute
+     * @param categorical flags indicating categorical attributes
+     * @param rows number of rows
      * @return
-     * @throws ParseException
      */
-    private double[] calculateCentroid(DataHandle dataset, String[] attributes, List<Integer> categoricalIndicies) throws ParseException {
+    private double[] calculateCentroid(double[][] columns, boolean[] categorical, int rows) {
 
         // Calculate centroid. Categorical values will get the max value for the categorical attribute.
-        double[] centroid = new double[attributes.length];
-        for (int row = 0; row < dataset.getNumRows(); row++) {
-            double[] vector = getVector(dataset, row, attributes);
-            for (int i = 0; i < attributes.length; i++) {
-                if (categoricalIndicies.contains(i)) {
-                    if (vector[i] > centroid[i]) {
-                        centroid[i] = vector[i];
-                    }
-                } else {
-                    centroid[i] += vector[i];
-                }
-            }
-        }
-        for (int i = 0; i < attributes.length; i++) {
-            if (!categoricalIndicies.contains(i)) {
-                centroid[i] /= dataset.getNumRows();
+        double[] centroid = new double[columns.length];
+        for (int index = 0; index < columns.length; index++) {
+            if (categorical[index]) {
+                centroid[index] = Math.max(0d, Arrays.stream(columns[index]).parallel().max().orElse(0d));
+            } else {
+                centroid[index] = Arrays.stream(columns[index]).parallel().sum() / rows;
             }
         }
         return centroid;
@@ -315,100 +411,265 @@ public class TargetSelection {
     }
 
     /**
-     * Creates a vector
+     * Extracts the normalized values of an attribute. Each distinct value is parsed only once. Distances to the
+     * centroid use the scaling (value + min) / (min + max), which is kept so that existing distance indices and
+     * targets remain valid. Neighbour-based scores use min-max normalization to [0, 1], so that all attributes
+     * contribute to distances with the same range.
      * @param handle
-     * @param row
-     * @param attributes
+     * @param attribute
+     * @param minMax whether to use min-max normalization
      * @return
      * @throws ParseException
      */
-    private double[] getVector(DataHandle handle, int row, String[] attributes) throws ParseException {
+    private double[] getColumn(DataHandle handle, String attribute, boolean minMax) throws ParseException {
         
         // Prepare
-        double[] vector = new double[attributes.length];
-        int index = 0;
+        int column = handle.getColumnIndexOf(attribute);
+        Class<?> _clazz = handle.getDefinition().getDataType(attribute).getDescription().getWrappedClass();
+        double[] values = new double[handle.getNumRows()];
 
-        // For each attribute
-        for (String attribute : attributes) {
-            // Index
-            int column = handle.getColumnIndexOf(attribute);
-            // Obtain metadata
-            DataType<?> _type = handle.getDefinition().getDataType(attribute);
-            Class<?> _clazz = _type.getDescription().getWrappedClass();
-            // Value
-            double value;
+        // Map via categoricalMappings, which include frequencies (range is 0 to 1)
+        if (_clazz.equals(String.class)) {
+            Map<String, Double> mapping = categoricalMappings.get(attribute);
+            for (int row = 0; row < values.length; row++) {
+                values[row] = mapping.get(handle.getValue(row, column));
+            }
+            return values;
+        }
 
-            // Calculate depending on data type
-            if (_clazz.equals(Long.class)) {
-                // Handle data type represented as long
-                Long _value = handle.getLong(row, column);
-                value = _value != null ? _value : 0d; // TODO: how to handle null here
-                value = (value + minimum.get(attribute)) / (minimum.get(attribute) + maximum.get(attribute));
-            } else if (_clazz.equals(Double.class)) {
-                // Handle data type represented as double
-                Double _value = handle.getDouble(row, column);
-                value = _value != null ? _value : 0d; // TODO: how to handle null here
-                value = (value + minimum.get(attribute)) / (minimum.get(attribute) + maximum.get(attribute));
-            } else if (_clazz.equals(Date.class)) {
-                // Handle data type represented as date
-                Date _value = handle.getDate(row, column);
-                value = _value != null ? _value.getTime() : 0d; // TODO: how to handle null here
-                value = (value + minimum.get(attribute)) / (minimum.get(attribute) + maximum.get(attribute));
-            } else if (_clazz.equals(String.class)) {
-                // Map via categoricalMappings, which include frequencies (range is 0 to 1)
-                value = categoricalMappings.get(attribute).get(handle.getValue(row, column));
-            } else {
-                throw new IllegalStateException("Unknown data type");
+        // Parse and normalize other data types
+        double min = minimum.get(attribute);
+        double max = maximum.get(attribute);
+        double range = max - min;
+        Map<String, Double> cache = new HashMap<>();
+        for (int row = 0; row < values.length; row++) {
+            String label = handle.getValue(row, column);
+            Double value = cache.get(label);
+            if (value == null) {
+                double _value = getValue(handle, row, column, _clazz);
+                if (minMax) {
+                    value = range > 0d ? (_value - min) / range : 0d;
+                } else {
+                    value = (_value + min) / (min + max);
+                }
+                cache.put(label, value);
             }
-            // Store
-            vector[index++] = value;
+            values[row] = value;
         }
+        
         // Done
-        return vector;
+        return values;
+    }
+
+    /**
+     * Parses a value
+     * @param handle
+     * @param row
+     * @param column
+     * @param clazz
+     * @return
+     * @throws ParseException
+     */
+    private double getValue(DataHandle handle, int row, int column, Class<?> clazz) throws ParseException {
+        if (clazz.equals(Long.class)) {
+            // Handle data type represented as long
+            Long _value = handle.getLong(row, column);
+            return _value != null ? _value : 0d; // TODO: how to handle null here
+        } else if (clazz.equals(Double.class)) {
+            // Handle data type represented as double
+            Double _value = handle.getDouble(row, column);
+            return _value != null ? _value : 0d; // TODO: how to handle null here
+        } else if (clazz.equals(Date.class)) {
+            // Handle data type represented as date
+            Date _value = handle.getDate(row, column);
+            return _value != null ? _value.getTime() : 0d; // TODO: how to handle null here
+        } else {
+            throw new IllegalStateException("Unknown data type");
+        }
     }
 
     /**
-     * 
+     * Returns the top targets
      * @param numTargets
      * @param type
      * @return
      */
     protected Set<Integer> getTopTargets(int numTargets, TargetType type) {
-        
-        // Prepare
-        Set<Integer> targetIds = new HashSet<>();
-        List<Pair<Integer, Double>> distances = new ArrayList<>();
+        return toSet(getRankedTargets(numTargets, type));
+    }
 
-        // Get distances
-        for (int i = 0; i < this.distances.length; i++) {
-            distances.add(new Pair<>(i, getNormalizedDistance(i)));
+    /**
+     * Returns the tree of min-max normalized values of all records
+     * @return
+     * @throws ParseException
+     */
+    private KDTree getTree() throws ParseException {
+
+        // Analyze attributes, if only distances have been loaded
+        DataHandle handle = data.getHandle();
+        if (categorical == null) {
+            analyzeAttributes(handle, attributes);
         }
 
-        // For each target type
-        switch (type) {
-            case OUTLIER:
-                // Sort indices by distance in descending order
-                distances.sort((p1, p2) -> {
-                    //TODO 0 does not return equal
-                    return p2.getSecond().compareTo(p1.getSecond());
-                });
-                break;
-            case AVERAGE:
-                // Sort indices by distance in ascending order
-                distances.sort((p1, p2) -> {
-                    return p1.getSecond().compareTo(p2.getSecond());
-                });
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown target type");
+        // Extract normalized values, point by point
+        int rows = handle.getNumRows();
+        double[] points = new double[rows * attributes.length];
+        for (int index = 0; index < attributes.length; index++) {
+            double[] column = getColumn(handle, attributes[index], true);
+            for (int row = 0; row < rows; row++) {
+                points[row * attributes.length + index] = column[row];
+            }
+        }
+
+        // Done
+        return new KDTree(points, attributes.length);
+    }
+
+    /**
+     * Returns whether the first row is ranked before the second one. Ties are broken in favour of the lower row.
+     * @param scores
+     * @param first
+     * @param second
+     * @param descending
+     * @return
+     */
+    private static boolean isRankedBefore(double[] scores, int first, int second, boolean descending) {
+        int comparison = Double.compare(scores[first], scores[second]);
+        if (comparison == 0) {
+            return first < second;
+        }
+        return descending ? comparison > 0 : comparison < 0;
+    }
+
+    /**
+     * Returns the rows with the largest or smallest scores, ordered by rank
+     * @param scores
+     * @param numTargets
+     * @param descending
+     * @return
+     */
+    private static int[] rank(double[] scores, int numTargets, boolean descending) {
+
+        // Check
+        if (numTargets < 0 || numTargets > scores.length) {
+            throw new IllegalArgumentException("Invalid number of targets: " + numTargets);
         }
 
-        // Copy to set
-        for(int i = 0; i < numTargets; i++) {
-            targetIds.add(distances.get(i).getFirst());
+        // Select, keeping the lowest ranked row at the root
+        int[] heap = new int[numTargets];
+        int size = 0;
+        for (int row = 0; row < scores.length && numTargets > 0; row++) {
+            if (size < numTargets) {
+                heap[size] = row;
+                siftUp(scores, heap, size++, descending);
+            } else if (isRankedBefore(scores, row, heap[0], descending)) {
+                heap[0] = row;
+                siftDown(scores, heap, 0, size, descending);
+            }
+        }
+
+        // Order by rank, removing the lowest ranked row first
+        for (int end = size - 1; end > 0; end--) {
+            swap(heap, 0, end);
+            siftDown(scores, heap, 0, end, descending);
         }
         
         // Done
+        return heap;
+    }
+
+    /**
+     * Restores the heap property below the given position. The root of the heap is the lowest ranked row.
+     * @param scores
+     * @param heap
+     * @param position
+     * @param size
+     * @param descending
+     */
+    private static void siftDown(double[] scores, int[] heap, int position, int size, boolean descending) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && isRankedBefore(scores, heap[child], heap[child + 1], descending)) {
+                child++;
+            }
+            if (!isRankedBefore(scores, heap[position], heap[child], descending)) {
+                return;
+            }
+            swap(heap, position, child);
+            position = child;
+        }
+    }
+
+    /**
+     * Restores the heap property above the given position. The root of the heap is the lowest ranked row.
+     * @param scores
+     * @param heap
+     * @param position
+     * @param descending
+     */
+    private static void siftUp(double[] scores, int[] heap, int position, boolean descending) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!isRankedBefore(scores, heap[parent], heap[position], descending)) {
+                return;
+            }
+            swap(heap, parent, position);
+            position = parent;
+        }
+    }
+
+    /**
+     * Swaps two entries
+     * @param array
+     * @param first
+     * @param second
+     */
+    private static void swap(int[] array, int first, int second) {
+        int temp = array[first];
+        array[first] = array[second];
+        array[second] = temp;
+    }
+
+    /**
+     * Returns the given rows as a set, preserving their order
+     * @param rows
+     * @return
+     */
+    private static Set<Integer> toSet(int[] rows) {
+        Set<Integer> targetIds = new LinkedHashSet<>();
+        for (int row : rows) {
+            targetIds.add(row);
+        }
         return targetIds;
     }
+
+    /**
+     * Returns the QIs in the order of their columns
+     * @param handle
+     * @return
+     */
+    private static String[] getQuasiIdentifiers(DataHandle handle) {
+        
+        // Prepare
+        Set<String> _attributes = handle.getDefinition().getQuasiIdentifyingAttributes();
+
+        // Check
+        if (_attributes.size() == 0){
+            throw new IllegalArgumentException("Distances will only calculated on QIs but none were defined.");
+        }
+
+        // Collect indices and variable names
+        String[] attributes = new String[_attributes.size()];
+        int index = 0;
+        for (int column = 0; column < handle.getNumColumns(); column++) {
+            String attribute = handle.getAttributeName(column);
+            if (_attributes.contains(attribute)) {
+                attributes[index++] = attribute;
+            }
+        }
+        return attributes;
+    }
 }
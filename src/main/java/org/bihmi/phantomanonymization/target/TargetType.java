@@ -16,10 +16,14 @@ package org.bihmi.phantomanonymization.target;
 
 /**
  * Used to distinguish types of targets i.e. random, outlier or middle/centre targets or targets by import.
+ * Outliers are either distant from the centroid or, for the KNN and LOF types, distant from their nearest neighbours
+ * or in regions with a lower density than their neighbours.
  */
 public enum TargetType {
     RANDOM,
     OUTLIER,
     AVERAGE,
-    IMPORT
+    IMPORT,
+    KNN_OUTLIER,
+    LOF_OUTLIER
 }
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.features;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks statistics of encoded columns
+ */
+public class ColumnStatisticsTest {
+
+    /** Tolerance */
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testMomentsOddCount() {
+        assertArrayEquals(new double[] {3d, 3d, 2.5d}, ColumnStatistics.getMoments(new double[] {5d, 1d, 3d, 4d, 2d}), DELTA);
+    }
+
+    @Test
+    public void testMomentsEvenCount() {
+        // The median is the mean of the two middle values
+        assertArrayEquals(new double[] {2.5d, 2.5d, 5d / 3d}, ColumnStatistics.getMoments(new double[] {4d, 1d, 3d, 2d}), DELTA);
+        assertArrayEquals(new double[] {42.5d, 45d, 237.5d}, ColumnStatistics.getMoments(new double[] {30d, 40d, 50d, 20d, 60d, 55d}), DELTA);
+    }
+
+    @Test
+    public void testMomentsWithSuppressedRows() {
+        // Suppressed rows are NaN and ignored, so 4 values remain
+        assertArrayEquals(new double[] {2.5d, 2.5d, 5d / 3d}, ColumnStatistics.getMoments(new double[] {4d, Double.NaN, 1d, 3d, Double.NaN, 2d}), DELTA);
+        assertArrayEquals(new double[] {2d, 2d, 0d}, ColumnStatistics.getMoments(new double[] {Double.NaN, 2d}), DELTA);
+        assertArrayEquals(new double[] {0d, 0d, 0d}, ColumnStatistics.getMoments(new double[] {Double.NaN}), DELTA);
+    }
+
+    @Test
+    public void testFrequenciesWithTies() {
+        // Ties are resolved in favour of the value which appeared first
+        int[] counts = {3, 2, 3, 2, 1, 1};
+        assertEquals(4, ColumnStatistics.getLeastFrequent(counts));
+        assertEquals(0, ColumnStatistics.getMostFrequent(counts));
+        assertEquals(0, ColumnStatistics.getLeastFrequent(new int[] {2, 2}));
+        assertEquals(0, ColumnStatistics.getMostFrequent(new int[] {2, 2}));
+        assertEquals(2, ColumnStatistics.getMostFrequent(new int[] {1, 2, 5, 5}));
+    }
+
+    @Test
+    public void testLiveValuesWithSuppressedRows() {
+        // All rows are scanned, values of suppressed rows are skipped and the order of live rows is kept
+        boolean[] rowLive = {true, false, true, true, false, true};
+        double[] numeric = {1d, Double.NaN, 3d, 4d, Double.NaN, 6d};
+        assertArrayEquals(new double[] {1d, 3d, 4d, 6d}, ColumnStatistics.getLiveValues(numeric, rowLive, 4), 0d);
+        int[] codes = {0, 1, 2, 0, 1, 2};
+        int[] mapping = {10, 11, 12};
+        assertArrayEquals(new int[] {10, 12, 10, 12}, ColumnStatistics.getLiveCodes(codes, mapping, rowLive, 4));
+    }
+
+    @Test
+    public void testLiveValuesAlignedWithCodes() {
+        // Numeric values and categorical codes of the same live row end up at the same position
+        boolean[] rowLive = {false, false, true, true, true};
+        double[] numeric = {Double.NaN, Double.NaN, 7d, 8d, 9d};
+        int[] codes = {0, 0, 1, 2, 3};
+        double[] values = ColumnStatistics.getLiveValues(numeric, rowLive, 3);
+        int[] live = ColumnStatistics.getLiveCodes(codes, new int[] {0, 7, 8, 9}, rowLive, 3);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], live[i], 0d);
+        }
+    }
+}
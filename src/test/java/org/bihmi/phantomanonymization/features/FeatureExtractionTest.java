@@ -0,0 +1,402 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.features;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import org.bihmi.anonymization.config.AttributeConfig;
+import org.deidentifier.arx.ARXAnonymizer;
+import org.deidentifier.arx.ARXConfiguration;
+import org.deidentifier.arx.AttributeType;
+import org.deidentifier.arx.AttributeType.Hierarchy;
+import org.deidentifier.arx.Data;
+import org.deidentifier.arx.DataHandle;
+import org.deidentifier.arx.DataType;
+import org.deidentifier.arx.aggregates.StatisticsFrequencyDistribution;
+import org.deidentifier.arx.aggregates.StatisticsSummary;
+import org.deidentifier.arx.criteria.KAnonymity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that features extracted from encoded columns are equal to features extracted row by row from the handle,
+ * as implemented before columns were read in a single pass. The first fixture has an odd number of rows and no ties
+ * between frequencies of categorical values, where naive features are unchanged. The second fixture contains
+ * suppressed rows, an even number of rows which are not suppressed and ties, where naive features follow the
+ * documented semantics: the median of an even number of values is the mean of the two middle values and ties are
+ * resolved in favour of the value which appears first.
+ */
+public class FeatureExtractionTest {
+
+    /** Tolerance */
+    private static final double DELTA = 1e-9;
+    /** Number of bins */
+    private static final int    BINS  = 5;
+
+    /** Data */
+    private Data                  data;
+    /** Data, in which two rows are suppressed when anonymized */
+    private Data                  suppressedData;
+    /** Attribute configs */
+    private List<AttributeConfig> attributeConfigs;
+    /** Attributes to consider */
+    private Set<String>           attributes;
+
+    @BeforeEach
+    public void setUp() {
+
+        // Data
+        Data.DefaultData data = Data.create();
+        data.add("age", "weight", "sex", "city");
+        data.add("34", "70.5", "m", "X");
+        data.add("29", "82.1", "f", "Y");
+        data.add("51", "65.0", "m", "X");
+        data.add("42", "90.3", "m", "Z");
+        data.add("29", "58.7", "d", "X");
+        data.add("63", "77.4", "f", "Y");
+        data.add("38", "68.2", "m", "X");
+        data.getDefinition().setDataType("age", DataType.INTEGER);
+        data.getDefinition().setDataType("weight", DataType.DECIMAL);
+        data.getDefinition().setDataType("sex", DataType.STRING);
+        data.getDefinition().setDataType("city", DataType.STRING);
+        this.data = data;
+
+        // Data with unique combinations of QIs in rows 5 and 6, which are suppressed by 2-anonymity
+        Data.DefaultData suppressedData = Data.create();
+        suppressedData.add("age", "weight", "sex", "city");
+        suppressedData.add("30", "60", "m", "X");
+        suppressedData.add("40", "70", "m", "X");
+        suppressedData.add("50", "80", "f", "Y");
+        suppressedData.add("20", "90", "f", "Y");
+        suppressedData.add("60", "65", "m", "X");
+        suppressedData.add("35", "75", "d", "Z");
+        suppressedData.add("45", "85", "f", "X");
+        suppressedData.add("55", "95", "f", "Y");
+        suppressedData.getDefinition().setDataType("age", DataType.INTEGER);
+        suppressedData.getDefinition().setDataType("weight", DataType.DECIMAL);
+        suppressedData.getDefinition().setAttributeType("age", AttributeType.INSENSITIVE_ATTRIBUTE);
+        suppressedData.getDefinition().setAttributeType("weight", AttributeType.INSENSITIVE_ATTRIBUTE);
+        suppressedData.getDefinition().setAttributeType("sex", Hierarchy.create(new String[][] {{"m"}, {"f"}, {"d"}}));
+        suppressedData.getDefinition().setAttributeType("city", Hierarchy.create(new String[][] {{"X"}, {"Y"}, {"Z"}}));
+        this.suppressedData = suppressedData;
+
+        // Configs
+        attributeConfigs = new ArrayList<>();
+        attributeConfigs.add(getAttributeConfig("age", "Integer", 0L, 100L));
+        attributeConfigs.add(getAttributeConfig("weight", "Decimal", 40d, 120d));
+        attributeConfigs.add(getAttributeConfig("sex", "String", null, null));
+        attributeConfigs.add(getAttributeConfig("city", "String", null, null));
+        attributes = new HashSet<>(Arrays.asList("age", "weight", "sex", "city"));
+    }
+
+    @Test
+    public void testNaive() {
+        DataHandle handle = data.getHandle();
+        double[] expected = getNaive(handle, getDictionary());
+        double[] actual = new FeatureNaive(handle, attributes, attributeConfigs, getDictionary(), new HashMap<>()).compile();
+        assertArrayEquals(expected, actual, DELTA);
+    }
+
+    @Test
+    public void testHistogram() {
+        DataHandle handle = data.getHandle();
+        double[] expected = getHistogram(handle, getDictionary());
+        double[] actual = new FeatureHistogram(handle, attributes, attributeConfigs, getDictionary(), new HashMap<>(), BINS).compile();
+        assertArrayEquals(expected, actual, DELTA);
+    }
+
+    @Test
+    public void testEnsemble() {
+        DataHandle handle = data.getHandle();
+        Dictionary dictionary = getDictionary();
+        double[] naive = getNaive(handle, dictionary);
+        double[] histogram = getHistogram(handle, dictionary);
+        double[] correlation = getCorrelation(handle, dictionary);
+        double[] expected = new double[naive.length + histogram.length + correlation.length];
+        System.arraycopy(naive, 0, expected, 0, naive.length);
+        System.arraycopy(histogram, 0, expected, naive.length, histogram.length);
+        System.arraycopy(correlation, 0, expected, naive.length + histogram.length, correlation.length);
+        double[] actual = new FeatureEnsemble(handle, attributes, attributeConfigs, getDictionary(), new HashMap<>(), BINS).compile();
+        assertArrayEquals(expected, actual, DELTA);
+    }
+
+    @Test
+    public void testNaiveWithSuppressedRows() throws IOException {
+        DataHandle handle = getSuppressedOutput();
+        Dictionary dictionary = getDictionary(suppressedData);
+        double[] actual = new FeatureNaive(handle, attributes, attributeConfigs, dictionary, new HashMap<>()).compile();
+        assertArrayEquals(getSuppressedNaive(dictionary), actual, DELTA);
+    }
+
+    @Test
+    public void testHistogramWithSuppressedRows() throws IOException {
+        DataHandle handle = getSuppressedOutput();
+        double[] expected = getHistogram(handle, getDictionary(suppressedData));
+        double[] actual = new FeatureHistogram(handle, attributes, attributeConfigs, getDictionary(suppressedData), new HashMap<>(), BINS).compile();
+        assertArrayEquals(expected, actual, DELTA);
+    }
+
+    @Test
+    public void testCorrelationWithSuppressedRows() throws IOException {
+        DataHandle handle = getSuppressedOutput();
+        double[] expected = getCorrelation(handle, getDictionary(suppressedData));
+        double[] actual = new FeatureCorrelation(handle, attributes, attributeConfigs, getDictionary(suppressedData)).compile();
+        assertArrayEquals(expected, actual, DELTA);
+    }
+
+    @Test
+    public void testEnsembleWithSuppressedRows() throws IOException {
+        DataHandle handle = getSuppressedOutput();
+        Dictionary dictionary = getDictionary(suppressedData);
+        double[] expected = flatten(Arrays.asList(getSuppressedNaive(dictionary), getHistogram(handle, dictionary), getCorrelation(handle, dictionary)));
+        double[] actual = new FeatureEnsemble(handle, attributes, attributeConfigs, getDictionary(suppressedData), new HashMap<>(), BINS).compile();
+        assertArrayEquals(expected, actual, DELTA);
+    }
+
+    /**
+     * Returns the output of 2-anonymity without generalization, in which rows 5 and 6 are suppressed
+     */
+    private DataHandle getSuppressedOutput() throws IOException {
+        ARXConfiguration config = ARXConfiguration.create();
+        config.addPrivacyModel(new KAnonymity(2));
+        config.setSuppressionLimit(1d);
+        DataHandle handle = new ARXAnonymizer().anonymize(suppressedData, config).getOutput();
+        List<Integer> suppressed = new ArrayList<>();
+        for (int row = 0; row < handle.getNumRows(); row++) {
+            if (handle.isSuppressed(row)) {
+                suppressed.add(row);
+            }
+        }
+        assertEquals(Arrays.asList(5, 6), suppressed);
+        return handle;
+    }
+
+    /**
+     * Naive features of the suppressed fixture. Numerical statistics cover the 6 rows which are not suppressed,
+     * frequencies of categorical values all rows, where m and f as well as X and Y are tied.
+     */
+    private double[] getSuppressedNaive(Dictionary dictionary) {
+        return new double[] {
+            // age: 30, 40, 50, 20, 60, 55
+            42.5d, 45d, 237.5d,
+            // city: X, X, Y, Y, X, *, *, Y
+            dictionary.probe("city", "*"), dictionary.probe("city", "X"), 3d,
+            // sex: m, m, f, f, m, *, *, f
+            dictionary.probe("sex", "*"), dictionary.probe("sex", "m"), 3d,
+            // weight: 60, 70, 80, 90, 65, 95
+            460d / 6d, 75d, 196d + 2d / 3d
+        };
+    }
+
+    /**
+     * Returns an attribute config
+     */
+    private static AttributeConfig getAttributeConfig(String name, String dataType, Object min, Object max) {
+        AttributeConfig attributeConfig = new AttributeConfig();
+        attributeConfig.setName(name);
+        attributeConfig.setDataType(dataType);
+        attributeConfig.setType("QUASI_IDENTIFYING_ATTRIBUTE");
+        attributeConfig.setMin(min);
+        attributeConfig.setMax(max);
+        return attributeConfig;
+    }
+
+    /**
+     * Returns a dictionary containing all values, so that codes do not depend on the order of probing
+     */
+    private Dictionary getDictionary() {
+        return getDictionary(data);
+    }
+
+    /**
+     * Returns a dictionary containing all values of the given data
+     */
+    private Dictionary getDictionary(Data data) {
+        Dictionary dictionary = new Dictionary();
+        dictionary.addAllValues(attributeConfigs, data);
+        return dictionary;
+    }
+
+    /**
+     * Returns the numeric value of a cell
+     */
+    private static double getDouble(DataHandle handle, int row, int column) {
+        return Double.valueOf(handle.getValue(row, column));
+    }
+
+    /**
+     * Naive features, using summary statistics and counting values row by row
+     */
+    @SuppressWarnings("unchecked")
+    private double[] getNaive(DataHandle handle, Dictionary dictionary) {
+        Map<String, StatisticsSummary<?>> statistics = handle.getStatistics().getSummaryStatistics(false);
+        String[] _attributes = attributes.toArray(new String[0]);
+        Arrays.sort(_attributes);
+        double[] features = new double[_attributes.length * 3];
+        int index = 0;
+        for (String attribute : _attributes) {
+            int column = handle.getColumnIndexOf(attribute);
+            DataType<?> type = handle.getDefinition().getDataType(attribute);
+            if (type.getDescription().getWrappedClass().equals(String.class)) {
+                Map<String, Integer> map = new HashMap<>();
+                for (int row = 0; row < handle.getNumRows(); row++) {
+                    map.merge(handle.getValue(row, column), 1, Integer::sum);
+                }
+                int minFreq = Integer.MAX_VALUE;
+                int maxFreq = Integer.MIN_VALUE;
+                for (Map.Entry<String, Integer> entry : map.entrySet()) {
+                    int code = dictionary.probe(attribute, entry.getKey());
+                    if (entry.getValue() < minFreq) {
+                        minFreq = entry.getValue();
+                        features[index] = code;
+                    }
+                    if (entry.getValue() > maxFreq) {
+                        maxFreq = entry.getValue();
+                        features[index + 1] = code;
+                    }
+                }
+                features[index + 2] = map.size();
+            } else {
+                StatisticsSummary<?> summary = statistics.get(attribute);
+                features[index] = summary.getArithmeticMeanAsDouble();
+                features[index + 1] = ((Number) ((DataType<Object>) type).parse(summary.getMedianAsString())).doubleValue();
+                features[index + 2] = summary.getSampleVarianceAsDouble();
+            }
+            index += 3;
+        }
+        return features;
+    }
+
+    /**
+     * Histogram features, binning values of rows which are not suppressed and using frequency distributions
+     */
+    private double[] getHistogram(DataHandle handle, Dictionary dictionary) {
+        List<double[]> numeric = new ArrayList<>();
+        List<double[]> categorical = new ArrayList<>();
+        for (AttributeConfig attributeConfig : attributeConfigs) {
+            String attribute = attributeConfig.getName();
+            int column = handle.getColumnIndexOf(attribute);
+            if (attributeConfig.getMin() != null) {
+                double min = ((Number) attributeConfig.getMin()).doubleValue();
+                double max = ((Number) attributeConfig.getMax()).doubleValue();
+                double binSize = (max - min) / BINS;
+                double[] freqs = new double[BINS];
+                for (int row = 0; row < handle.getNumRows(); row++) {
+                    if (handle.isSuppressed(row)) {
+                        continue;
+                    }
+                    int bin = (int) ((getDouble(handle, row, column) - min) / binSize);
+                    freqs[Math.max(0, Math.min(BINS - 1, bin))] += 1d;
+                }
+                numeric.add(freqs);
+            } else {
+                StatisticsFrequencyDistribution distribution = handle.getStatistics().getFrequencyDistribution(column);
+                double[] feature = new double[dictionary.size(attribute)];
+                for (int i = 0; i < distribution.values.length; i++) {
+                    feature[dictionary.probe(attribute, distribution.values[i])] = distribution.frequency[i] * distribution.count;
+                }
+                categorical.add(feature);
+            }
+        }
+        numeric.addAll(categorical);
+        return flatten(numeric);
+    }
+
+    /**
+     * Correlation features, using Pearson's correlation of materialized indicator columns of rows which are not
+     * suppressed
+     */
+    private double[] getCorrelation(DataHandle handle, Dictionary dictionary) {
+
+        // Rows which are not suppressed
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < handle.getNumRows(); row++) {
+            if (!handle.isSuppressed(row)) {
+                rows.add(row);
+            }
+        }
+
+        // Materialize columns
+        List<double[]> columns = new ArrayList<>();
+        for (AttributeConfig attributeConfig : attributeConfigs) {
+            String attribute = attributeConfig.getName();
+            int column = handle.getColumnIndexOf(attribute);
+            if (attributeConfig.getMin() != null) {
+                double[] values = new double[rows.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = getDouble(handle, rows.get(i), column);
+                }
+                columns.add(values);
+            } else {
+                int offset = columns.size();
+                for (int code = 0; code < dictionary.size(attribute); code++) {
+                    columns.add(new double[rows.size()]);
+                }
+                for (int i = 0; i < rows.size(); i++) {
+                    columns.get(offset + dictionary.probe(attribute, handle.getValue(rows.get(i), column)))[i] = 1d;
+                }
+            }
+        }
+        double[][] matrix = new double[rows.size()][columns.size()];
+        for (int column = 0; column < columns.size(); column++) {
+            for (int row = 0; row < matrix.length; row++) {
+                matrix[row][column] = columns.get(column)[row];
+            }
+        }
+
+        // Calculate and select the same triangle
+        double[][] result = new PearsonsCorrelation().computeCorrelationMatrix(new Array2DRowRealMatrix(matrix)).getData();
+        List<Double> features = new ArrayList<>();
+        for (int i = 0; i < result.length - 1; i++) {
+            for (int j = 0; j < result.length - i - 1; j++) {
+                features.add(Double.isNaN(result[i][j]) ? 0d : result[i][j]);
+            }
+        }
+        double[] array = new double[features.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = features.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Concatenates arrays
+     */
+    private static double[] flatten(List<double[]> parts) {
+        int length = 0;
+        for (double[] part : parts) {
+            length += part.length;
+        }
+        double[] result = new double[length];
+        int position = 0;
+        for (double[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+}
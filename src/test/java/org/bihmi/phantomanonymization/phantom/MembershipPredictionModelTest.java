@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.phantom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.bihmi.phantomanonymization.config.RiskAssessmentConfig;
+import org.bihmi.phantomanonymization.features.Dictionary;
+import org.bihmi.phantomanonymization.features.FeatureType;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the membership prediction model with incremental training
+ */
+public class MembershipPredictionModelTest {
+
+    /**
+     * Returns a model trained incrementally
+     */
+    private static MembershipPredictionModel getOnlineModel() {
+        RiskAssessmentConfig config = new RiskAssessmentConfig();
+        config.setClassifierType(ClassifierType.ONLINE_LR);
+        return new MembershipPredictionModel(new ArrayList<>(), new Dictionary(), config, 2, 2);
+    }
+
+    /**
+     * A job whose training samples all failed still adds its test samples, prediction reports the missing training
+     */
+    @Test
+    public void testOnlineWithoutTraining() {
+        MembershipPredictionModel model = getOnlineModel();
+        model.test(new double[] {1d, 2d});
+        model.test(new double[] {3d, 4d});
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                                                       () -> model.predict(FeatureType.NAIVE, ClassifierType.ONLINE_LR, new HashSet<>()));
+        assertEquals("No training data has been provided", exception.getMessage());
+    }
+
+    @Test
+    public void testOnline() {
+        MembershipPredictionModel model = getOnlineModel();
+        for (int i = 0; i < 10; i++) {
+            model.train(new double[] {0d, i}, false);
+            model.train(new double[] {1d, i}, true);
+        }
+        model.test(new double[] {0d, 5d});
+        model.test(new double[] {1d, 5d});
+        assertEquals(2, model.predict(FeatureType.NAIVE, ClassifierType.ONLINE_LR, new HashSet<>()).length);
+    }
+}
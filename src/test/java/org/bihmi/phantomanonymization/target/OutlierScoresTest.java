@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.;
+ */
+
+package org.bihmi.phantomanonymization.target;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks outlier scores on a small fixture containing a group of duplicates, and nearest neighbours on random
+ * points, which are large enough to split the KD-tree, against a brute-force search
+ */
+public class OutlierScoresTest {
+
+    /** Five duplicates, a point next to them and a distant point */
+    private static final double[] POINTS = {0d, 0d, 0d, 0d, 0d, 1d, 10d};
+
+    @Test
+    public void testKnnDistances() {
+        double[] scores = OutlierScores.getKnnDistances(new KDTree(POINTS, 1), 2);
+        assertArrayEquals(new double[] {0d, 0d, 0d, 0d, 0d, 1d, 10d}, scores, 1e-12);
+    }
+
+    @Test
+    public void testLocalOutlierFactorsWithDuplicates() {
+        double[] scores = OutlierScores.getLocalOutlierFactors(new KDTree(POINTS, 1), 2);
+        for (double score : scores) {
+            assertTrue(Double.isFinite(score));
+        }
+        for (int point = 0; point < 5; point++) {
+            assertEquals(1d, scores[point], 1e-9);
+        }
+        assertTrue(scores[5] > 1d);
+        assertTrue(scores[6] > scores[5]);
+    }
+
+    @Test
+    public void testLocalOutlierFactorsWithoutDuplicates() {
+        double[] scores = OutlierScores.getLocalOutlierFactors(new KDTree(new double[] {0d, 1d, 2d, 3d, 10d}, 1), 2);
+        for (int point = 1; point < 4; point++) {
+            assertTrue(scores[point] < scores[4]);
+        }
+    }
+
+    @Test
+    public void testKnnDistancesAgainstBruteForce() {
+        Random random = new Random(42);
+        for (int dimensions = 1; dimensions <= 4; dimensions++) {
+
+            // Random points on a coarse grid, so that coordinates and points are duplicated
+            int size = 300 + random.nextInt(200);
+            double[] points = new double[size * dimensions];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = random.nextInt(8) / 8d;
+            }
+            for (int i = 0; i < 20; i++) {
+                int source = random.nextInt(size);
+                int target = random.nextInt(size);
+                System.arraycopy(points, source * dimensions, points, target * dimensions, dimensions);
+            }
+
+            // Compare
+            KDTree tree = new KDTree(points, dimensions);
+            for (int k : new int[] {1, 5, 20}) {
+                assertArrayEquals(getKnnDistances(points, dimensions, k), OutlierScores.getKnnDistances(tree, k), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testQueryAgainstBruteForce() {
+        Random random = new Random(7);
+        int dimensions = 3;
+        int size = 500;
+        double[] points = new double[size * dimensions];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextDouble();
+        }
+        KDTree tree = new KDTree(points, dimensions);
+        int k = 10;
+        for (int point = 0; point < size; point++) {
+            int[] neighbors = new int[k];
+            double[] distances = new double[k];
+            tree.query(point, neighbors, distances);
+            double[] expected = getDistances(points, dimensions, point);
+            Arrays.sort(expected);
+            double[] actual = distances.clone();
+            Arrays.sort(actual);
+            assertArrayEquals(Arrays.copyOf(expected, k), actual, 1e-12);
+            for (int i = 0; i < k; i++) {
+                assertEquals(getDistance(points, dimensions, point, neighbors[i]), distances[i], 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Returns the distance of each point to its k-th nearest neighbour by comparing all pairs of points
+     */
+    private static double[] getKnnDistances(double[] points, int dimensions, int k) {
+        int size = points.length / dimensions;
+        double[] result = new double[size];
+        for (int point = 0; point < size; point++) {
+            double[] distances = getDistances(points, dimensions, point);
+            Arrays.sort(distances);
+            result[point] = distances[k - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the distances of a point to all other points
+     */
+    private static double[] getDistances(double[] points, int dimensions, int point) {
+        int size = points.length / dimensions;
+        double[] distances = new double[size - 1];
+        int index = 0;
+        for (int other = 0; other < size; other++) {
+            if (other != point) {
+                distances[index++] = getDistance(points, dimensions, point, other);
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Returns the euclidean distance between two points
+     */
+    private static double getDistance(double[] points, int dimensions, int first, int second) {
+        double sum = 0d;
+        for (int d = 0; d < dimensions; d++) {
+            double delta = points[first * dimensions + d] - points[second * dimensions + d];
+            sum += delta * delta;
+        }
+        return Math.sqrt(sum);
+    }
+}